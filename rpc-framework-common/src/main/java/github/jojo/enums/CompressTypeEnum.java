@@ -7,16 +7,25 @@ import lombok.Getter;
  * @author zzj
  * @version 1.0
  * @date 2021/1/21 22:29
- * @description ---------GZIP压缩类型------
+ * @description ---------压缩类型------
  */
 @AllArgsConstructor
 @Getter
 public enum CompressTypeEnum {
 
     /**
-     *
+     * 不压缩 body原样传输（小消息或压缩效果差的消息）
+     */
+    NONE((byte) 0x00, "none"),
+    GZIP((byte) 0x01, "gzip"),
+    /**
+     * 纯java实现的LZ4块压缩 压缩率不如gzip 但速度快得多 适合机房内部的RPC
      */
-    GZIP((byte) 0x01, "gzip");
+    LZ4((byte) 0x02, "lz4"),
+    /**
+     * 使用预置字典的deflate 适合小而重复度高的消息
+     */
+    DEFLATE((byte) 0x03, "deflate");
 
     /**
      *
@@ -40,4 +49,19 @@ public enum CompressTypeEnum {
         return null;
     }
 
+    /**
+     * 根据名称（配置文件中的取值）获取压缩类型
+     *
+     * @param name 压缩类型名称 如gzip/lz4
+     * @return 找不到时返回null
+     */
+    public static CompressTypeEnum getByName(String name) {
+        for (CompressTypeEnum c : CompressTypeEnum.values()) {
+            if (c.name.equalsIgnoreCase(name)) {
+                return c;
+            }
+        }
+        return null;
+    }
+
 }
@@ -0,0 +1,19 @@
+package github.jojo.enums;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/7 15:10
+ * @description ---------服务/方法独立线程池满了之后的处理方式------
+ */
+public enum RejectPolicyEnum {
+
+    /**
+     * 直接返回OVERLOADED 保证其他服务不受影响
+     */
+    FAIL_FAST,
+    /**
+     * 交给公共的业务线程池执行
+     */
+    FALLBACK_TO_SHARED
+}
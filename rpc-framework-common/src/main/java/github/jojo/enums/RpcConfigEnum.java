@@ -14,7 +14,112 @@ import lombok.Getter;
 public enum RpcConfigEnum {
 
     RPC_CONFIG_PATH("rpc.properties"),
-    ZK_ADDRESS("rpc.zookeeper.address");
+    ZK_ADDRESS("rpc.zookeeper.address"),
+    /**
+     * kryo类注册表 格式: 全限定类名:id,全限定类名:id 客户端与服务端必须保持一致
+     */
+    KRYO_REGISTRATION("rpc.serialize.kryo.registration"),
+    /**
+     * 是否要求所有序列化的类都必须注册（开启后类名不再写入数据）
+     */
+    KRYO_REGISTRATION_REQUIRED("rpc.serialize.kryo.registrationRequired"),
+    /**
+     * kryo对象池中最多缓存的kryo实例数量
+     */
+    KRYO_POOL_SIZE("rpc.serialize.kryo.poolSize"),
+    /**
+     * 小于该字节数的body不压缩
+     */
+    COMPRESS_THRESHOLD("rpc.compress.threshold"),
+    /**
+     * 某个服务方法的压缩率（压缩后/压缩前）估计值大于该值时不再压缩
+     */
+    COMPRESS_MAX_RATIO("rpc.compress.maxRatio"),
+    /**
+     * 发送消息时期望使用的压缩类型 gzip/lz4/none
+     */
+    COMPRESS_TYPE("rpc.compress.type"),
+    /**
+     * 逗号分隔的候选压缩类型 按服务方法在期望的压缩类型和候选中选择压缩率估计最低的一个 默认没有候选
+     */
+    COMPRESS_CANDIDATES("rpc.compress.candidates"),
+    /**
+     * deflate预置字典的样本文件 客户端与服务端必须一致
+     */
+    COMPRESS_DICTIONARY_PATH("rpc.compress.dictionary.path"),
+    /**
+     * 采样线上消息写入该文件 用于离线生成样本文件
+     */
+    COMPRESS_DICTIONARY_SAMPLE_PATH("rpc.compress.dictionary.samplePath"),
+    /**
+     * 采样的消息条数
+     */
+    COMPRESS_DICTIONARY_SAMPLE_COUNT("rpc.compress.dictionary.sampleCount"),
+    /**
+     * 客户端是否使用连接上的方法表精简请求（只发送方法id和参数）
+     */
+    COMPACT_INVOCATION("rpc.protocol.compactInvocation"),
+    /**
+     * 合并flush: 同一次读事件/同一轮EventLoop中的多次writeAndFlush只触发一次flush
+     * 连续写出该数量的消息后强制flush 小于等于0表示关闭
+     */
+    FLUSH_CONSOLIDATION("rpc.transport.flushConsolidation"),
+    /**
+     * Netty传输层: auto（默认 Linux上native epoll可用时使用epoll 否则NIO） nio（始终使用NIO 即之前版本的行为） epoll（native库不可用时回退到NIO）
+     */
+    TRANSPORT_TYPE("rpc.transport.type"),
+    /**
+     * epoll是否使用边缘触发 默认true
+     */
+    TRANSPORT_EPOLL_EDGE_TRIGGERED("rpc.transport.epoll.edgeTriggered"),
+    /**
+     * epoll下服务端监听socket开启SO_REUSEPORT 默认false
+     */
+    SERVER_REUSE_PORT("rpc.server.reusePort"),
+    /**
+     * 服务端监听socket的数量 大于1时(需要epoll)通过SO_REUSEPORT在同一端口上绑定多个socket 每个socket一个accept线程 默认1
+     */
+    SERVER_ACCEPTORS("rpc.server.acceptors"),
+    /**
+     * 客户端请求的默认超时时间（毫秒） 超时后future以异常结束并从未完成请求表中移除
+     */
+    CLIENT_REQUEST_TIMEOUT("rpc.client.requestTimeout"),
+    /**
+     * 客户端与每个服务器地址最多建立的连接数 负载升高时按需建立
+     */
+    CLIENT_CONNECTIONS_PER_ADDRESS("rpc.client.connectionsPerAddress"),
+    /**
+     * 是否对每个服务器地址开启自适应并发限制（根据RTT调整在途请求数）
+     */
+    CLIENT_LIMITER_ENABLED("rpc.client.limiter.enabled"),
+    CLIENT_LIMITER_INITIAL_LIMIT("rpc.client.limiter.initialLimit"),
+    CLIENT_LIMITER_MAX_LIMIT("rpc.client.limiter.maxLimit"),
+    /**
+     * 达到并发限制后最多排队的请求数和排队的最长时间（毫秒） 超过后直接失败
+     */
+    CLIENT_LIMITER_QUEUE_SIZE("rpc.client.limiter.queueSize"),
+    CLIENT_LIMITER_QUEUE_TIMEOUT("rpc.client.limiter.queueTimeout"),
+    /**
+     * 客户端同一连接上的请求攒批: 一个批次最多的请求数（小于等于1表示不攒批）和等待的时间（微秒 0表示只合并同一轮EventLoop中的请求）
+     */
+    CLIENT_BATCH_MAX_SIZE("rpc.client.batch.maxSize"),
+    CLIENT_BATCH_WINDOW("rpc.client.batch.windowMicros"),
+    /**
+     * 服务端排队中和处理中的请求总数上限 超过后直接返回OVERLOADED 小于等于0表示不限制
+     */
+    SERVER_MAX_PENDING_REQUESTS("rpc.server.maxPendingRequests"),
+    /**
+     * 每个服务排队中和处理中的请求数上限 小于等于0表示不限制
+     */
+    SERVER_MAX_PENDING_REQUESTS_PER_SERVICE("rpc.server.maxPendingRequestsPerService"),
+    /**
+     * 单独指定某些服务的上限 格式: rpc service name:上限,rpc service name:上限
+     */
+    SERVER_SERVICE_PENDING_LIMITS("rpc.server.servicePendingLimits"),
+    /**
+     * 服务端公共业务线程池的执行方式 pool: cpu核数*2个平台线程 virtual: 每个请求一个虚拟线程（JDK 21+ 否则回退为pool）
+     */
+    SERVER_EXECUTION_MODE("rpc.server.executionMode");
 
     private final String propertyValue;
 
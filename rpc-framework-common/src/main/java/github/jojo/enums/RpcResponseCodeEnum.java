@@ -19,7 +19,11 @@ public enum RpcResponseCodeEnum {
      * success or fail to RpcResponse
      */
     SUCCESS(200, "The remote call is successful"),
-    FAIL(500, "The remote call is fail");
+    FAIL(500, "The remote call is fail"),
+    /**
+     * 服务端请求积压超过上限 请求没有被处理 客户端可以重试其他服务器
+     */
+    OVERLOADED(503, "The server is overloaded");
 
     private final int code;
 
@@ -10,4 +10,8 @@ public class SerializeException extends RuntimeException {
     public SerializeException(String message) {
         super(message);
     }
+
+    public SerializeException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
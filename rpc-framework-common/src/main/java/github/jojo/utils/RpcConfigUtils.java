@@ -0,0 +1,96 @@
+package github.jojo.utils;
+
+import github.jojo.enums.RpcConfigEnum;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Properties;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/2/23 20:12
+ * @description -----------读取rpc.properties中的框架配置项-----------
+ * 配置文件只在第一次访问时读取一次 之后直接从缓存的Properties中获取
+ * 同名的JVM系统属性（-Dkey=value）优先级高于配置文件
+ */
+@Slf4j
+public class RpcConfigUtils {
+
+    private static volatile Properties properties;
+
+    private RpcConfigUtils() {
+    }
+
+    public static String getString(RpcConfigEnum config, String defaultValue) {
+        String key = config.getPropertyValue();
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = getProperties().getProperty(key);
+        }
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    public static int getInt(RpcConfigEnum config, int defaultValue) {
+        String value = getString(config, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            log.error("config [{}] is not an int: [{}]", config.getPropertyValue(), value);
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(RpcConfigEnum config, long defaultValue) {
+        String value = getString(config, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            log.error("config [{}] is not a long: [{}]", config.getPropertyValue(), value);
+            return defaultValue;
+        }
+    }
+
+    public static double getDouble(RpcConfigEnum config, double defaultValue) {
+        String value = getString(config, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            log.error("config [{}] is not a double: [{}]", config.getPropertyValue(), value);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(RpcConfigEnum config, boolean defaultValue) {
+        String value = getString(config, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * double check 只读取一次配置文件 文件不存在时使用空的Properties（全部取默认值）
+     */
+    private static Properties getProperties() {
+        Properties result = properties;
+        if (result == null) {
+            synchronized (RpcConfigUtils.class) {
+                result = properties;
+                if (result == null) {
+                    result = PropertiesFileUtil.readPropertiesFile(RpcConfigEnum.RPC_CONFIG_PATH.getPropertyValue());
+                    if (result == null) {
+                        result = new Properties();
+                    }
+                    properties = result;
+                }
+            }
+        }
+        return result;
+    }
+}
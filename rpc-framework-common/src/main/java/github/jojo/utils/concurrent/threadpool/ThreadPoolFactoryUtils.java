@@ -3,6 +3,7 @@ package github.jojo.utils.concurrent.threadpool;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 
+import java.lang.reflect.Method;
 import java.util.Map;
 import java.util.concurrent.*;
 
@@ -62,6 +63,69 @@ public class ThreadPoolFactoryUtils {
         return threadPool;
     }
 
+    /**
+     * 每个任务一个虚拟线程的线程池（JDK 21+） 项目按1.8编译 通过反射调用Thread.ofVirtual和Executors.newThreadPerTaskExecutor
+     * 反射方法以及是否支持虚拟线程只在第一次调用时检查
+     *
+     * @param threadNamePrefix 虚拟线程名称前缀
+     * @return 当前JDK不支持虚拟线程时返回null 由调用方回退到平台线程池
+     */
+    public static ExecutorService createVirtualThreadPerTaskExecutorIfAbsent(String threadNamePrefix) {
+        ExecutorService executor = THREAD_POOLS.computeIfAbsent(threadNamePrefix, ThreadPoolFactoryUtils::createVirtualThreadPerTaskExecutor);
+        if (executor != null && (executor.isShutdown() || executor.isTerminated())) {
+            THREAD_POOLS.remove(threadNamePrefix, executor);
+            executor = THREAD_POOLS.computeIfAbsent(threadNamePrefix, ThreadPoolFactoryUtils::createVirtualThreadPerTaskExecutor);
+        }
+        return executor;
+    }
+
+    private static ExecutorService createVirtualThreadPerTaskExecutor(String threadNamePrefix) {
+        if (!VirtualThreadSupport.AVAILABLE) {
+            return null;
+        }
+        try {
+            Object builder = VirtualThreadSupport.OF_VIRTUAL.invoke(null);
+            builder = VirtualThreadSupport.NAME.invoke(builder, threadNamePrefix + "-", 0L);
+            ThreadFactory threadFactory = (ThreadFactory) VirtualThreadSupport.FACTORY.invoke(builder);
+            return (ExecutorService) VirtualThreadSupport.NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            log.warn("create virtual thread executor [{}] failed", threadNamePrefix, e);
+            return null;
+        }
+    }
+
+    /**
+     * 虚拟线程相关的反射方法 第一次使用时查找一次 不支持的JDK上只打印一次警告 之后直接返回不可用
+     */
+    private static final class VirtualThreadSupport {
+        private static final boolean AVAILABLE;
+        private static final Method OF_VIRTUAL;
+        private static final Method NAME;
+        private static final Method FACTORY;
+        private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+        static {
+            Method ofVirtual = null;
+            Method name = null;
+            Method factory = null;
+            Method newThreadPerTaskExecutor = null;
+            try {
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                name = builderClass.getMethod("name", String.class, long.class);
+                factory = builderClass.getMethod("factory");
+                newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            } catch (ReflectiveOperationException e) {
+                log.warn("virtual threads are not supported by java [{}]", System.getProperty("java.version"));
+            }
+            AVAILABLE = newThreadPerTaskExecutor != null;
+            OF_VIRTUAL = ofVirtual;
+            NAME = name;
+            FACTORY = factory;
+            NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+        }
+    }
+
     /**
      * 关闭当前维护的所有线程池
      */
@@ -0,0 +1,33 @@
+package github.jojo.annotation;
+
+import github.jojo.enums.RejectPolicyEnum;
+
+import java.lang.annotation.*;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/7 15:20
+ * @description -------------标注在service实现类(或接口)的方法上 为该方法指定独立的线程池-----------
+ * 优先级高于{@link RpcService}上的线程池配置 线程池按方法签名区分 同名的重载方法各自使用自己的线程池
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface RpcMethod {
+
+    /**
+     * 独立线程池的线程数 0表示使用服务的线程池
+     */
+    int threads() default 0;
+
+    /**
+     * 独立线程池的队列长度
+     */
+    int queueSize() default 100;
+
+    /**
+     * 线程池和队列都满了之后的处理方式
+     */
+    RejectPolicyEnum rejectPolicy() default RejectPolicyEnum.FAIL_FAST;
+}
@@ -22,4 +22,10 @@ public @interface RpcReference {
      * Service group, default value is empty string
      */
     String group() default "";
+
+    /**
+     * Invocation timeout in milliseconds, 0 means rpc.client.requestTimeout
+     * 服务端处理请求时发起的嵌套调用 超时时间不超过请求剩余的时间
+     */
+    long timeout() default 0;
 }
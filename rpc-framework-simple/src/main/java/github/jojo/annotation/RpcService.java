@@ -1,5 +1,7 @@
 package github.jojo.annotation;
 
+import github.jojo.enums.RejectPolicyEnum;
+
 import java.lang.annotation.*;
 
 /**
@@ -24,4 +26,20 @@ public @interface RpcService {
      * Service group, default value is empty string
      */
     String group() default "";
+
+    /**
+     * 服务独立线程池的线程数 0表示使用公共的业务线程池
+     * 慢服务占满自己的线程池不会影响其他服务
+     */
+    int threads() default 0;
+
+    /**
+     * 独立线程池的队列长度
+     */
+    int queueSize() default 100;
+
+    /**
+     * 线程池和队列都满了之后的处理方式
+     */
+    RejectPolicyEnum rejectPolicy() default RejectPolicyEnum.FAIL_FAST;
 }
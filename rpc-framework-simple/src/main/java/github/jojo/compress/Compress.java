@@ -1,6 +1,9 @@
 package github.jojo.compress;
 
 import github.jojo.extension.SPI;
+import github.jojo.remoting.constants.RpcConstants;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 
 /**
  * @author zzj
@@ -11,7 +14,43 @@ import github.jojo.extension.SPI;
 @SPI
 public interface Compress {
 
+    /**
+     * 解压结果的最大长度 与帧的最大长度一致
+     * 原始长度等字段来自网络 解压前必须检查 防止很小的恶意数据让对端分配或膨胀出超大的内存
+     */
+    int MAX_DECOMPRESSED_LENGTH = RpcConstants.MAX_FRAME_LENGTH;
+
     byte[] compress(byte[] bytes);
 
     byte[] decompress(byte[] bytes);
+
+    /**
+     * 压缩in中所有可读字节 结果直接写入out
+     * 默认实现退化为byte[]拷贝 具体实现可以覆写以直接在ByteBuf之间流式压缩
+     *
+     * @param in  待压缩数据 读取后readerIndex移动到writerIndex
+     * @param out 压缩结果从writerIndex处开始写入
+     */
+    default void compress(ByteBuf in, ByteBuf out) {
+        byte[] bytes = new byte[in.readableBytes()];
+        in.readBytes(bytes);
+        out.writeBytes(compress(bytes));
+    }
+
+    /**
+     * 解压in中所有可读字节 结果写入由allocator分配的ByteBuf
+     * 默认实现退化为byte[]拷贝 具体实现可以覆写以直接从ByteBuf流式解压
+     *
+     * @param in        待解压数据
+     * @param allocator 用于分配解压结果的ByteBuf（通常为ctx.alloc() 即池化的分配器）
+     * @return 解压后的数据 由调用方负责release
+     */
+    default ByteBuf decompress(ByteBuf in, ByteBufAllocator allocator) {
+        byte[] bytes = new byte[in.readableBytes()];
+        in.readBytes(bytes);
+        byte[] decompressed = decompress(bytes);
+        ByteBuf out = allocator.buffer(decompressed.length);
+        out.writeBytes(decompressed);
+        return out;
+    }
 }
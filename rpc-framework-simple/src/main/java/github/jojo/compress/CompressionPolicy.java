@@ -0,0 +1,183 @@
+package github.jojo.compress;
+
+import github.jojo.enums.CompressTypeEnum;
+import github.jojo.enums.RpcConfigEnum;
+import github.jojo.utils.RpcConfigUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/2/24 19:05
+ * @description -----------自适应压缩策略 由编码器对每一条消息决定是否压缩----------
+ * 1.body小于阈值（rpc.compress.threshold）直接不压缩：小消息压缩后通常反而更大 还白白消耗CPU
+ * 2.按服务方法、压缩类型分别维护压缩率（压缩后/压缩前）的滑动估计值 在期望的压缩类型和候选压缩类型（rpc.compress.candidates）中
+ * 选择估计值最低的一个 所有估计值都过高说明该方法的数据基本压不动 也不压缩
+ * 3.每个服务方法每隔PROBE_INTERVAL条消息轮流用期望的和候选的压缩类型压缩一次 用于刷新估计值（数据特征可能发生变化）
+ */
+@Slf4j
+public class CompressionPolicy {
+
+    private static final int DEFAULT_THRESHOLD = 1024;
+    private static final int DEFAULT_DICTIONARY_THRESHOLD = 64;
+    private static final double DEFAULT_MAX_RATIO = 0.9;
+    private static final int PROBE_INTERVAL = 64;
+    /**
+     * 指数加权移动平均的权重 新样本占20%
+     */
+    private static final double ALPHA = 0.2;
+    private static final String UNKNOWN_METHOD = "";
+    private static final byte[] NO_CANDIDATES = new byte[0];
+
+    private final int threshold;
+    private final double maxRatio;
+    /**
+     * 配置的默认压缩类型（rpc.compress.type）
+     */
+    private final byte defaultCompressType;
+    /**
+     * 除了期望的压缩类型之外还可以选择的压缩类型（rpc.compress.candidates）
+     */
+    private final byte[] candidates;
+    /**
+     * key: 服务方法(interface#method) value: 该方法每种压缩类型的压缩率估计
+     */
+    private final Map<String, MethodEstimate> estimates = new ConcurrentHashMap<>();
+
+    public CompressionPolicy() {
+        this.maxRatio = RpcConfigUtils.getDouble(RpcConfigEnum.COMPRESS_MAX_RATIO, DEFAULT_MAX_RATIO);
+        String compressName = RpcConfigUtils.getString(RpcConfigEnum.COMPRESS_TYPE, CompressTypeEnum.GZIP.getName());
+        CompressTypeEnum compressType = CompressTypeEnum.getByName(compressName);
+        if (compressType == null) {
+            throw new IllegalArgumentException("unknown compress type: " + compressName);
+        }
+        this.defaultCompressType = compressType.getCode();
+        //预置字典的deflate对小消息也有效果 默认阈值低得多
+        this.threshold = RpcConfigUtils.getInt(RpcConfigEnum.COMPRESS_THRESHOLD,
+                compressType == CompressTypeEnum.DEFLATE ? DEFAULT_DICTIONARY_THRESHOLD : DEFAULT_THRESHOLD);
+        this.candidates = parseCandidates(RpcConfigUtils.getString(RpcConfigEnum.COMPRESS_CANDIDATES, null));
+    }
+
+    /**
+     * @param names 逗号分隔的压缩类型名称 未知的名称打印错误后忽略
+     */
+    private static byte[] parseCandidates(String names) {
+        if (names == null) {
+            return NO_CANDIDATES;
+        }
+        byte[] codes = new byte[CompressTypeEnum.values().length];
+        int size = 0;
+        for (String name : names.split(",")) {
+            CompressTypeEnum compressType = CompressTypeEnum.getByName(name.trim());
+            if (compressType == null) {
+                log.error("unknown compress candidate: [{}]", name);
+            } else if (compressType != CompressTypeEnum.NONE && !contains(codes, size, compressType.getCode())) {
+                codes[size++] = compressType.getCode();
+            }
+        }
+        return Arrays.copyOf(codes, size);
+    }
+
+    private static boolean contains(byte[] codes, int size, byte code) {
+        for (int i = 0; i < size; i++) {
+            if (codes[i] == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 发送方默认期望使用的压缩类型
+     */
+    public byte defaultCompressType() {
+        return defaultCompressType;
+    }
+
+    /**
+     * 为一条消息选择压缩类型
+     *
+     * @param methodKey  服务方法 可以为null
+     * @param preferred  发送方期望使用的压缩类型 为none时不压缩
+     * @param bodyLength 序列化后body的字节数
+     * @return 实际使用的压缩类型
+     */
+    public byte select(String methodKey, byte preferred, int bodyLength) {
+        if (preferred == CompressTypeEnum.NONE.getCode() || bodyLength < threshold) {
+            return CompressTypeEnum.NONE.getCode();
+        }
+        MethodEstimate estimate = estimates.get(methodKey == null ? UNKNOWN_METHOD : methodKey);
+        if (estimate == null) {
+            return preferred;
+        }
+        byte best = CompressTypeEnum.NONE.getCode();
+        double bestRatio = maxRatio;
+        double ratio = estimate.ratio(preferred);
+        //还没有样本 先压缩一次
+        if (Double.isNaN(ratio)) {
+            return preferred;
+        }
+        if (ratio < bestRatio) {
+            best = preferred;
+            bestRatio = ratio;
+        }
+        for (byte candidate : candidates) {
+            if (candidate == preferred) {
+                continue;
+            }
+            ratio = estimate.ratio(candidate);
+            if (Double.isNaN(ratio)) {
+                return candidate;
+            }
+            if (ratio < bestRatio) {
+                best = candidate;
+                bestRatio = ratio;
+            }
+        }
+        int messages = ++estimate.messages;
+        if (messages % PROBE_INTERVAL == 0) {
+            //轮流试探每一种压缩类型
+            int index = messages / PROBE_INTERVAL % (candidates.length + 1);
+            return index == 0 ? preferred : candidates[index - 1];
+        }
+        return best;
+    }
+
+    /**
+     * 记录一次压缩的结果 更新该服务方法的压缩率估计
+     */
+    public void record(String methodKey, byte compressType, int originalLength, int compressedLength) {
+        if (compressType <= CompressTypeEnum.NONE.getCode() || compressType >= MethodEstimate.SIZE) {
+            return;
+        }
+        double ratio = (double) compressedLength / originalLength;
+        MethodEstimate estimate = estimates.computeIfAbsent(methodKey == null ? UNKNOWN_METHOD : methodKey,
+                k -> new MethodEstimate());
+        double previous = estimate.ratios[compressType];
+        estimate.ratios[compressType] = Double.isNaN(previous) ? ratio : previous * (1 - ALPHA) + ratio * ALPHA;
+    }
+
+    /**
+     * 估计值只是统计意义上的参考 并发更新时丢失个别样本没有影响 因此不加锁
+     */
+    private static final class MethodEstimate {
+        private static final int SIZE = CompressTypeEnum.values().length;
+        /**
+         * 下标为压缩类型的code NaN表示还没有样本
+         */
+        private final double[] ratios = new double[SIZE];
+        private int messages;
+
+        private MethodEstimate() {
+            Arrays.fill(ratios, Double.NaN);
+        }
+
+        private double ratio(byte compressType) {
+            return compressType < SIZE ? ratios[compressType] : Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package github.jojo.compress.deflate;
+
+import github.jojo.compress.Compress;
+import github.jojo.enums.RpcConfigEnum;
+import github.jojo.utils.RpcConfigUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/2/26 15:10
+ * @description -----------使用预置字典的deflate压缩 适合小而重复度高的消息----------
+ * RpcRequest中的接口名、方法名、group/version、类名在每一帧中都会出现 单条小消息内部重复很少 gzip压缩后反而变大
+ * 预置字典相当于把这些公共内容提前放进了deflate的窗口 小消息也能直接引用
+ * <p>
+ * 数据格式: 4B 字典id（字典的Adler32校验值 0表示没有使用字典） + deflate数据（不带zlib头）
+ * 字典由rpc.compress.dictionary.path指定的样本文件训练得到 通信双方必须使用同一份样本文件 解压时字典id不一致直接报错
+ * <p>
+ * Deflater/Inflater按线程复用 每次使用前reset
+ */
+@Slf4j
+public class DeflateCompress implements Compress {
+
+    private static final int NO_DICTIONARY = 0;
+    private static final int BUFFER_SIZE = 1024 * 4;
+    private static final int DEFAULT_SAMPLE_COUNT = 1000;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    /**
+     * Deflater/Inflater只接受byte[] 非堆内存的输入先复制到这里
+     */
+    private static final ThreadLocal<byte[]> INPUT = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    private static final int MAX_CACHED_INPUT_SIZE = 1024 * 1024;
+
+    private final byte[] dictionary;
+    private final int dictionaryId;
+    private final DictionarySampler sampler;
+
+    public DeflateCompress() {
+        this(loadDictionary(RpcConfigUtils.getString(RpcConfigEnum.COMPRESS_DICTIONARY_PATH, null)), createSampler());
+    }
+
+    public DeflateCompress(byte[] dictionary) {
+        this(dictionary, null);
+    }
+
+    private DeflateCompress(byte[] dictionary, DictionarySampler sampler) {
+        this.dictionary = dictionary == null || dictionary.length == 0 ? null : dictionary;
+        this.dictionaryId = dictionaryId(this.dictionary);
+        this.sampler = sampler;
+    }
+
+    public int getDictionaryId() {
+        return dictionaryId;
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        ByteBuf out = Unpooled.buffer(bytes.length / 2 + 16);
+        compress(Unpooled.wrappedBuffer(bytes), out);
+        return ByteBufUtil.getBytes(out);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        ByteBuf out = decompress(Unpooled.wrappedBuffer(bytes), ByteBufAllocator.DEFAULT);
+        try {
+            return ByteBufUtil.getBytes(out);
+        } finally {
+            out.release();
+        }
+    }
+
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) {
+        int length = in.readableBytes();
+        byte[] src;
+        int srcOffset;
+        if (in.hasArray()) {
+            src = in.array();
+            srcOffset = in.arrayOffset() + in.readerIndex();
+        } else {
+            src = input(in, length);
+            srcOffset = 0;
+        }
+        if (sampler != null) {
+            sampler.offer(src, srcOffset, length);
+        }
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(src, srcOffset, length);
+        deflater.finish();
+        out.writeInt(dictionaryId);
+        byte[] buffer = BUFFER.get();
+        while (!deflater.finished()) {
+            if (out.hasArray()) {
+                out.ensureWritable(Math.max(64, length / 2));
+                int n = deflater.deflate(out.array(), out.arrayOffset() + out.writerIndex(), out.writableBytes());
+                out.writerIndex(out.writerIndex() + n);
+            } else {
+                int n = deflater.deflate(buffer);
+                out.writeBytes(buffer, 0, n);
+            }
+        }
+        in.skipBytes(length);
+    }
+
+    @Override
+    public ByteBuf decompress(ByteBuf in, ByteBufAllocator allocator) {
+        if (in.readableBytes() < 4) {
+            throw new RuntimeException("deflate decompress error: data is too short");
+        }
+        int id = in.readInt();
+        if (id != dictionaryId) {
+            throw new RuntimeException("deflate decompress error: unknown dictionary id " + id
+                    + ", local dictionary id " + dictionaryId);
+        }
+        int length = in.readableBytes();
+        byte[] src;
+        int srcOffset;
+        if (in.hasArray()) {
+            src = in.array();
+            srcOffset = in.arrayOffset() + in.readerIndex();
+        } else {
+            src = input(in, length);
+            srcOffset = 0;
+        }
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        if (dictionary != null) {
+            //不带zlib头时 字典需要在解压前直接设置
+            inflater.setDictionary(dictionary);
+        }
+        inflater.setInput(src, srcOffset, length);
+        ByteBuf out = allocator.heapBuffer(Math.min(length * 4, MAX_DECOMPRESSED_LENGTH));
+        try {
+            while (!inflater.finished()) {
+                //很小的数据可以膨胀出极大的结果 解压结果超过上限直接失败
+                int remaining = MAX_DECOMPRESSED_LENGTH - out.readableBytes();
+                if (remaining <= 0) {
+                    throw new RuntimeException("deflate decompress error: decompressed length exceeds " + MAX_DECOMPRESSED_LENGTH);
+                }
+                out.ensureWritable(Math.min(BUFFER_SIZE, remaining));
+                int n = inflater.inflate(out.array(), out.arrayOffset() + out.writerIndex(),
+                        Math.min(out.writableBytes(), remaining));
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new RuntimeException("deflate decompress error: truncated data");
+                }
+                out.writerIndex(out.writerIndex() + n);
+            }
+            in.skipBytes(length);
+            return out;
+        } catch (DataFormatException | RuntimeException e) {
+            out.release();
+            throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException("deflate decompress error", e);
+        }
+    }
+
+    private static byte[] input(ByteBuf in, int length) {
+        byte[] input = INPUT.get();
+        if (input.length < length) {
+            input = new byte[length];
+            if (length <= MAX_CACHED_INPUT_SIZE) {
+                INPUT.set(input);
+            }
+        }
+        in.getBytes(in.readerIndex(), input, 0, length);
+        return input;
+    }
+
+    private static int dictionaryId(byte[] dictionary) {
+        if (dictionary == null) {
+            return NO_DICTIONARY;
+        }
+        Adler32 adler32 = new Adler32();
+        adler32.update(dictionary, 0, dictionary.length);
+        return (int) adler32.getValue();
+    }
+
+    /**
+     * 从样本文件训练字典 先按文件路径查找 找不到再从classpath中查找
+     */
+    private static byte[] loadDictionary(String path) {
+        if (path == null) {
+            return null;
+        }
+        List<byte[]> samples;
+        Path file = Paths.get(path);
+        try (InputStream in = Files.exists(file) ? Files.newInputStream(file)
+                : Thread.currentThread().getContextClassLoader().getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IllegalArgumentException("compress dictionary sample file not found: " + path);
+            }
+            samples = DictionaryTrainer.readSamples(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("read compress dictionary sample file failed: " + path, e);
+        }
+        byte[] dictionary = DictionaryTrainer.train(samples, DictionaryTrainer.DEFAULT_MAX_SIZE);
+        log.info("train compress dictionary from [{}] samples, dictionary size [{}], id [{}]",
+                samples.size(), dictionary.length, dictionaryId(dictionary));
+        return dictionary;
+    }
+
+    private static DictionarySampler createSampler() {
+        String samplePath = RpcConfigUtils.getString(RpcConfigEnum.COMPRESS_DICTIONARY_SAMPLE_PATH, null);
+        if (samplePath == null) {
+            return null;
+        }
+        int sampleCount = RpcConfigUtils.getInt(RpcConfigEnum.COMPRESS_DICTIONARY_SAMPLE_COUNT, DEFAULT_SAMPLE_COUNT);
+        return new DictionarySampler(Paths.get(samplePath), sampleCount);
+    }
+}
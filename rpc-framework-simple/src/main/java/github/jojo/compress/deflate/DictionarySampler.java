@@ -0,0 +1,66 @@
+package github.jojo.compress.deflate;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/2/26 16:05
+ * @description -----------采样线上流量 用于训练字典----------
+ * 字典必须在通信双方保持一致 所以不能在运行时各自训练后直接使用
+ * 这里只把前sampleCount条消息body写入样本文件 由使用者把样本文件分发给客户端和服务端（rpc.compress.dictionary.path）
+ */
+@Slf4j
+public class DictionarySampler {
+
+    private final Path samplePath;
+    private final int sampleCount;
+    private final List<byte[]> samples;
+    private final AtomicInteger reserved = new AtomicInteger();
+
+    public DictionarySampler(Path samplePath, int sampleCount) {
+        this.samplePath = samplePath;
+        this.sampleCount = sampleCount;
+        this.samples = new ArrayList<>(sampleCount);
+    }
+
+    /**
+     * 采样一条消息 采满之后直接返回
+     */
+    public void offer(byte[] bytes, int offset, int length) {
+        if (reserved.get() >= sampleCount || reserved.getAndIncrement() >= sampleCount) {
+            return;
+        }
+        byte[] sample = new byte[length];
+        System.arraycopy(bytes, offset, sample, 0, length);
+        boolean full;
+        synchronized (samples) {
+            samples.add(sample);
+            full = samples.size() == sampleCount;
+        }
+        if (full) {
+            //写文件不能占用IO线程
+            CompletableFuture.runAsync(this::dump);
+        }
+    }
+
+    private void dump() {
+        try (OutputStream out = Files.newOutputStream(samplePath)) {
+            synchronized (samples) {
+                DictionaryTrainer.writeSamples(samples, out);
+            }
+            log.info("dump [{}] compress dictionary samples to [{}]", sampleCount, samplePath);
+        } catch (IOException e) {
+            log.error("dump compress dictionary samples to [{}] failed", samplePath, e);
+        }
+    }
+}
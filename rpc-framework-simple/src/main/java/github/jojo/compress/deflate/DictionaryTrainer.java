@@ -0,0 +1,152 @@
+package github.jojo.compress.deflate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/2/26 14:32
+ * @description -----------根据样本训练deflate预置字典----------
+ * 1.统计每个k字节片段（k-gram）在多少个样本中出现过（同一个样本中出现多次只算一次）
+ * 2.在每个样本中找出由高频k-gram连续覆盖的片段 片段得分为其中k-gram出现次数之和
+ * 3.按得分从高到低选取片段直到达到字典大小 得分越高的片段放在字典越靠后的位置（距离越近 deflate编码越短）
+ * <p>
+ * 训练结果只取决于样本内容和顺序 客户端与服务端使用同一份样本文件就能得到同一个字典
+ */
+public final class DictionaryTrainer {
+
+    /**
+     * deflate的窗口为32KB 字典太大会挤占消息本身可以引用的窗口
+     */
+    public static final int DEFAULT_MAX_SIZE = 16 * 1024;
+    private static final int K = 8;
+    /**
+     * k-gram至少要在这么多个样本中出现 才认为是"公共"内容
+     */
+    private static final int MIN_FREQUENCY = 2;
+    private static final int MIN_SEGMENT_LENGTH = 32;
+
+    private DictionaryTrainer() {
+    }
+
+    /**
+     * @param samples 样本（一般是序列化后的消息body）
+     * @param maxSize 字典最大字节数
+     * @return 字典内容 没有公共内容时返回空数组
+     */
+    public static byte[] train(List<byte[]> samples, int maxSize) {
+        Map<Long, Integer> frequency = new HashMap<>();
+        for (byte[] sample : samples) {
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i + K <= sample.length; i++) {
+                Long gram = gram(sample, i);
+                if (seen.add(gram)) {
+                    frequency.merge(gram, 1, Integer::sum);
+                }
+            }
+        }
+        //key: 片段内容 value: 得分 相同片段取最高得分
+        Map<String, Long> segments = new LinkedHashMap<>();
+        for (byte[] sample : samples) {
+            int start = -1;
+            long score = 0;
+            for (int i = 0; i + K <= sample.length + 1; i++) {
+                int freq = i + K <= sample.length ? frequency.get(gram(sample, i)) : 0;
+                if (freq >= MIN_FREQUENCY) {
+                    if (start < 0) {
+                        start = i;
+                        score = 0;
+                    }
+                    score += freq;
+                } else if (start >= 0) {
+                    //片段覆盖[start, i - 1 + K)
+                    String segment = new String(sample, start, i - 1 + K - start, StandardCharsets.ISO_8859_1);
+                    segments.merge(segment, score, Math::max);
+                    start = -1;
+                }
+            }
+        }
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(segments.entrySet());
+        sorted.sort((a, b) -> {
+            int c = Long.compare(b.getValue(), a.getValue());
+            return c != 0 ? c : a.getKey().compareTo(b.getKey());
+        });
+        List<String> selected = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Long> entry : sorted) {
+            String segment = entry.getKey();
+            int remaining = maxSize - size;
+            if (segment.length() > remaining) {
+                //剩余空间还比较多时截取片段的前半部分 否则跳过
+                if (remaining < MIN_SEGMENT_LENGTH) {
+                    continue;
+                }
+                segment = segment.substring(0, remaining);
+            }
+            selected.add(segment);
+            size += segment.length();
+        }
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(size);
+        for (int i = selected.size() - 1; i >= 0; i--) {
+            byte[] bytes = selected.get(i).getBytes(StandardCharsets.ISO_8859_1);
+            dictionary.write(bytes, 0, bytes.length);
+        }
+        return dictionary.toByteArray();
+    }
+
+    /**
+     * 读取样本文件 格式为若干条记录: 4B 长度 + 样本内容
+     */
+    public static List<byte[]> readSamples(InputStream in) throws IOException {
+        DataInputStream input = new DataInputStream(in);
+        List<byte[]> samples = new ArrayList<>();
+        while (true) {
+            int length;
+            try {
+                length = input.readInt();
+            } catch (EOFException e) {
+                return samples;
+            }
+            if (length < 0) {
+                throw new IOException("invalid sample length: " + length);
+            }
+            byte[] sample = new byte[length];
+            input.readFully(sample);
+            samples.add(sample);
+        }
+    }
+
+    /**
+     * 写出样本文件 格式见{@link #readSamples(InputStream)}
+     */
+    public static void writeSamples(List<byte[]> samples, OutputStream out) throws IOException {
+        DataOutputStream output = new DataOutputStream(out);
+        for (byte[] sample : samples) {
+            output.writeInt(sample.length);
+            output.write(sample);
+        }
+        output.flush();
+    }
+
+    private static long gram(byte[] bytes, int index) {
+        long value = 0;
+        for (int i = 0; i < K; i++) {
+            value = value << 8 | bytes[index + i] & 0xFF;
+        }
+        return value;
+    }
+}
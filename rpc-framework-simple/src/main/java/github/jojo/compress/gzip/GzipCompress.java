@@ -1,6 +1,10 @@
 package github.jojo.compress.gzip;
 
 import github.jojo.compress.Compress;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -37,6 +41,22 @@ public class GzipCompress implements Compress {
         }
     }
 
+    /**
+     * GZIPOutputStream直接输出到out 不再经过ByteArrayOutputStream中转
+     *
+     * @param in  待压缩数据
+     * @param out 压缩结果
+     */
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) {
+        try (GZIPOutputStream gzip = new GZIPOutputStream(new ByteBufOutputStream(out), BUFFER_SIZE)) {
+            in.readBytes(gzip, in.readableBytes());
+            gzip.finish();
+        } catch (IOException e) {
+            throw new RuntimeException("gzip compress error", e);
+        }
+    }
+
     @Override
     public byte[] decompress(byte[] bytes) {
         if (bytes == null) {
@@ -49,10 +69,40 @@ public class GzipCompress implements Compress {
             //read返回读取到buffer中的数据长度
             while ((n = gunzip.read(buffer)) > -1) {
                 out.write(buffer, 0, n);
+                //很小的数据可以膨胀出极大的结果 解压结果超过上限直接失败
+                checkDecompressedLength(out.size());
             }
             return out.toByteArray();
         } catch (IOException e) {
             throw new RuntimeException("gzip decompress error", e);
         }
     }
+
+    /**
+     * GZIPInputStream直接读取in 解压结果直接写入池化的ByteBuf
+     *
+     * @param in        待解压数据
+     * @param allocator ByteBuf分配器
+     * @return 解压后的数据 由调用方负责release
+     */
+    @Override
+    public ByteBuf decompress(ByteBuf in, ByteBufAllocator allocator) {
+        ByteBuf out = allocator.buffer(Math.min(in.readableBytes() * 2, MAX_DECOMPRESSED_LENGTH));
+        try (GZIPInputStream gunzip = new GZIPInputStream(new ByteBufInputStream(in), BUFFER_SIZE)) {
+            //writeBytes返回-1表示流已经读完 每次最多比上限多读1个字节 用于判断是否超过上限
+            while (out.writeBytes(gunzip, Math.min(BUFFER_SIZE, MAX_DECOMPRESSED_LENGTH - out.readableBytes() + 1)) > -1) {
+                checkDecompressedLength(out.readableBytes());
+            }
+            return out;
+        } catch (IOException | RuntimeException e) {
+            out.release();
+            throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException("gzip decompress error", e);
+        }
+    }
+
+    private static void checkDecompressedLength(int length) {
+        if (length > MAX_DECOMPRESSED_LENGTH) {
+            throw new RuntimeException("gzip decompress error: decompressed length exceeds " + MAX_DECOMPRESSED_LENGTH);
+        }
+    }
 }
@@ -0,0 +1,325 @@
+package github.jojo.compress.lz4;
+
+import github.jojo.compress.Compress;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.Arrays;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/2/25 20:16
+ * @description -----------纯java实现的LZ4块压缩（LZ4 block format） 追求速度而不是压缩率----------
+ * 数据格式: 4B 原始长度 + LZ4 block
+ * LZ4 block由若干sequence组成 每个sequence为:
+ * <pre>
+ *   token(1B 高4位literal长度 低4位match长度-4) | literal长度扩展 | literals | offset(2B 小端) | match长度扩展
+ * </pre>
+ * 最后一个sequence只有literals。长度字段为15时后面跟扩展字节 每个扩展字节累加 直到遇到不为255的字节
+ * <p>
+ * 压缩时只做贪心匹配（4字节hash 不回溯寻找更长的匹配）。hash表、输入输出缓冲都按线程复用 不创建任何流对象
+ */
+public class Lz4Compress implements Compress {
+
+    private static final int HEADER_LENGTH = 4;
+    private static final int MIN_MATCH = 4;
+    /**
+     * 最后5个字节必须是literal 最后一个match必须在结尾12个字节之前开始（LZ4格式的约定 便于解压时批量拷贝）
+     */
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int RUN_MASK = 15;
+    private static final int ML_MASK = 15;
+    private static final int HASH_LOG = 14;
+    /**
+     * 一直找不到匹配时逐渐加大步长 跳过不可压缩的数据
+     */
+    private static final int SKIP_TRIGGER = 6;
+    /**
+     * 线程复用的缓冲超过该大小就不再缓存 避免偶尔的大消息让每个线程都长期持有大数组
+     */
+    private static final int MAX_CACHED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<int[]> HASH_TABLE = ThreadLocal.withInitial(() -> new int[1 << HASH_LOG]);
+    private static final ThreadLocal<byte[]> SRC_BUFFER = ThreadLocal.withInitial(() -> new byte[1024 * 4]);
+    private static final ThreadLocal<byte[]> DST_BUFFER = ThreadLocal.withInitial(() -> new byte[1024 * 4]);
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        byte[] dst = buffer(DST_BUFFER, HEADER_LENGTH + maxCompressedLength(bytes.length));
+        writeInt(dst, 0, bytes.length);
+        int length = compress(bytes, 0, bytes.length, dst, HEADER_LENGTH);
+        return Arrays.copyOf(dst, HEADER_LENGTH + length);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        if (bytes.length < HEADER_LENGTH) {
+            throw new RuntimeException("lz4 decompress error: block is too short");
+        }
+        int originalLength = readInt(bytes, 0);
+        checkOriginalLength(originalLength);
+        byte[] dst = new byte[originalLength];
+        decompress(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, dst, 0, originalLength);
+        return dst;
+    }
+
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) {
+        int srcLength = in.readableBytes();
+        byte[] src;
+        int srcOffset;
+        if (in.hasArray()) {
+            src = in.array();
+            srcOffset = in.arrayOffset() + in.readerIndex();
+        } else {
+            src = buffer(SRC_BUFFER, srcLength);
+            srcOffset = 0;
+            in.getBytes(in.readerIndex(), src, 0, srcLength);
+        }
+        int maxLength = maxCompressedLength(srcLength);
+        out.ensureWritable(HEADER_LENGTH + maxLength);
+        out.writeInt(srcLength);
+        if (out.hasArray()) {
+            //堆内存直接写入底层数组
+            int length = compress(src, srcOffset, srcLength, out.array(), out.arrayOffset() + out.writerIndex());
+            out.writerIndex(out.writerIndex() + length);
+        } else {
+            byte[] dst = buffer(DST_BUFFER, maxLength);
+            int length = compress(src, srcOffset, srcLength, dst, 0);
+            out.writeBytes(dst, 0, length);
+        }
+        in.skipBytes(srcLength);
+    }
+
+    @Override
+    public ByteBuf decompress(ByteBuf in, ByteBufAllocator allocator) {
+        if (in.readableBytes() < HEADER_LENGTH) {
+            throw new RuntimeException("lz4 decompress error: block is too short");
+        }
+        int originalLength = in.readInt();
+        checkOriginalLength(originalLength);
+        int srcLength = in.readableBytes();
+        byte[] src;
+        int srcOffset;
+        if (in.hasArray()) {
+            src = in.array();
+            srcOffset = in.arrayOffset() + in.readerIndex();
+        } else {
+            src = buffer(SRC_BUFFER, srcLength);
+            srcOffset = 0;
+            in.getBytes(in.readerIndex(), src, 0, srcLength);
+        }
+        //解压结果使用池化的堆内存 可以直接写入底层数组
+        ByteBuf out = allocator.heapBuffer(originalLength);
+        try {
+            decompress(src, srcOffset, srcLength, out.array(), out.arrayOffset() + out.writerIndex(), originalLength);
+        } catch (RuntimeException e) {
+            out.release();
+            throw e;
+        }
+        out.writerIndex(out.writerIndex() + originalLength);
+        in.skipBytes(srcLength);
+        return out;
+    }
+
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * 压缩src[srcOffset, srcOffset + srcLength) 写入dst[dstOffset...]
+     *
+     * @return 压缩后的长度
+     */
+    static int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset) {
+        //hash表中存放的是相对srcOffset的位置 之前调用残留的值会在匹配时校验 因此不需要清空
+        int[] hashTable = HASH_TABLE.get();
+        int dp = dstOffset;
+        int anchor = 0;
+        int ip = 0;
+        int matchLimit = srcLength - LAST_LITERALS;
+        int mfLimit = srcLength - MF_LIMIT;
+        int searchCount = 1 << SKIP_TRIGGER;
+        while (ip < mfLimit) {
+            int sequence = readInt(src, srcOffset + ip);
+            int h = hash(sequence);
+            int ref = hashTable[h];
+            hashTable[h] = ip;
+            if (ref < 0 || ref >= ip || ip - ref > MAX_DISTANCE || readInt(src, srcOffset + ref) != sequence) {
+                ip += searchCount++ >>> SKIP_TRIGGER;
+                continue;
+            }
+            searchCount = 1 << SKIP_TRIGGER;
+            //向前扩展匹配
+            while (ip > anchor && ref > 0 && src[srcOffset + ip - 1] == src[srcOffset + ref - 1]) {
+                ip--;
+                ref--;
+            }
+            //向后扩展匹配
+            int matchLength = MIN_MATCH;
+            while (ip + matchLength < matchLimit && src[srcOffset + ip + matchLength] == src[srcOffset + ref + matchLength]) {
+                matchLength++;
+            }
+            dp = writeSequence(src, srcOffset + anchor, ip - anchor, ip - ref, matchLength, dst, dp);
+            ip += matchLength;
+            anchor = ip;
+        }
+        //剩余部分全部作为literals
+        dp = writeLastLiterals(src, srcOffset + anchor, srcLength - anchor, dst, dp);
+        return dp - dstOffset;
+    }
+
+    /**
+     * 解压src[srcOffset, srcOffset + srcLength) 写入dst[dstOffset, dstOffset + originalLength)
+     */
+    static void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int originalLength) {
+        int ip = srcOffset;
+        int ipEnd = srcOffset + srcLength;
+        int op = dstOffset;
+        int opEnd = dstOffset + originalLength;
+        while (ip < ipEnd) {
+            int token = src[ip++] & 0xFF;
+            //literals
+            int literalLength = token >>> 4;
+            if (literalLength == RUN_MASK) {
+                int b;
+                do {
+                    checkBounds(ip < ipEnd);
+                    b = src[ip++] & 0xFF;
+                    literalLength += b;
+                } while (b == 255);
+            }
+            checkBounds(ip + literalLength <= ipEnd && op + literalLength <= opEnd);
+            System.arraycopy(src, ip, dst, op, literalLength);
+            ip += literalLength;
+            op += literalLength;
+            if (ip == ipEnd) {
+                //最后一个sequence只有literals
+                break;
+            }
+            //match
+            checkBounds(ip + 2 <= ipEnd);
+            int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+            ip += 2;
+            int ref = op - offset;
+            checkBounds(offset > 0 && ref >= dstOffset);
+            int matchLength = token & ML_MASK;
+            if (matchLength == ML_MASK) {
+                int b;
+                do {
+                    checkBounds(ip < ipEnd);
+                    b = src[ip++] & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            checkBounds(op + matchLength <= opEnd);
+            if (offset >= matchLength) {
+                System.arraycopy(dst, ref, dst, op, matchLength);
+                op += matchLength;
+            } else {
+                //重叠拷贝（例如offset=1表示重复上一个字节） 只能逐字节复制
+                for (int i = 0; i < matchLength; i++) {
+                    dst[op++] = dst[ref++];
+                }
+            }
+        }
+        checkBounds(op == opEnd);
+    }
+
+    private static int writeSequence(byte[] src, int literalOffset, int literalLength, int offset, int matchLength,
+                                     byte[] dst, int dp) {
+        int tokenIndex = dp++;
+        int token;
+        if (literalLength >= RUN_MASK) {
+            token = RUN_MASK << 4;
+            dp = writeLength(literalLength - RUN_MASK, dst, dp);
+        } else {
+            token = literalLength << 4;
+        }
+        System.arraycopy(src, literalOffset, dst, dp, literalLength);
+        dp += literalLength;
+        dst[dp++] = (byte) offset;
+        dst[dp++] = (byte) (offset >>> 8);
+        int ml = matchLength - MIN_MATCH;
+        if (ml >= ML_MASK) {
+            token |= ML_MASK;
+            dp = writeLength(ml - ML_MASK, dst, dp);
+        } else {
+            token |= ml;
+        }
+        dst[tokenIndex] = (byte) token;
+        return dp;
+    }
+
+    private static int writeLastLiterals(byte[] src, int literalOffset, int literalLength, byte[] dst, int dp) {
+        if (literalLength >= RUN_MASK) {
+            dst[dp++] = (byte) (RUN_MASK << 4);
+            dp = writeLength(literalLength - RUN_MASK, dst, dp);
+        } else {
+            dst[dp++] = (byte) (literalLength << 4);
+        }
+        System.arraycopy(src, literalOffset, dst, dp, literalLength);
+        return dp + literalLength;
+    }
+
+    private static int writeLength(int length, byte[] dst, int dp) {
+        while (length >= 255) {
+            dst[dp++] = (byte) 255;
+            length -= 255;
+        }
+        dst[dp++] = (byte) length;
+        return dp;
+    }
+
+    private static int hash(int sequence) {
+        //Knuth乘法hash 取高HASH_LOG位
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int readInt(byte[] bytes, int index) {
+        return (bytes[index] & 0xFF) << 24 | (bytes[index + 1] & 0xFF) << 16
+                | (bytes[index + 2] & 0xFF) << 8 | bytes[index + 3] & 0xFF;
+    }
+
+    private static void writeInt(byte[] bytes, int index, int value) {
+        bytes[index] = (byte) (value >>> 24);
+        bytes[index + 1] = (byte) (value >>> 16);
+        bytes[index + 2] = (byte) (value >>> 8);
+        bytes[index + 3] = (byte) value;
+    }
+
+    private static void checkOriginalLength(int originalLength) {
+        //原始长度来自网络 超过上限直接拒绝 不能按它分配内存
+        if (originalLength < 0 || originalLength > MAX_DECOMPRESSED_LENGTH) {
+            throw new RuntimeException("lz4 decompress error: invalid original length " + originalLength);
+        }
+    }
+
+    private static void checkBounds(boolean condition) {
+        if (!condition) {
+            throw new RuntimeException("lz4 decompress error: malformed block");
+        }
+    }
+
+    private static byte[] buffer(ThreadLocal<byte[]> threadLocal, int size) {
+        byte[] buffer = threadLocal.get();
+        if (buffer.length >= size) {
+            return buffer;
+        }
+        buffer = new byte[size];
+        if (size <= MAX_CACHED_BUFFER_SIZE) {
+            threadLocal.set(buffer);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,79 @@
+package github.jojo.provider;
+
+import github.jojo.enums.RejectPolicyEnum;
+import github.jojo.exception.RpcException;
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/2/18 20:12
+ * @description ------------服务发布时预先解析好的方法调用器----------
+ * MethodHandle在发布时绑定service对象并展开参数数组 类型统一为(Object[])Object
+ * 调用时使用invokeExact 不再每次请求getMethod查找方法 也没有Method.invoke的访问检查和参数包装
+ */
+public class MethodInvoker {
+
+    private static final Object[] EMPTY_ARGS = new Object[0];
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    @Getter
+    private final Method method;
+    private final Class<?>[] paramTypes;
+    private final MethodHandle handle;
+    /**
+     * 服务或方法的独立线程池 null表示使用公共的业务线程池
+     */
+    @Getter
+    private final ExecutorService executor;
+    @Getter
+    private final RejectPolicyEnum rejectPolicy;
+
+    MethodInvoker(Object service, Method method, ExecutorService executor, RejectPolicyEnum rejectPolicy) {
+        this.method = method;
+        this.executor = executor;
+        this.rejectPolicy = rejectPolicy;
+        this.paramTypes = method.getParameterTypes();
+        try {
+            //接口可能不是public的(例如内部接口) 先打开访问权限 unreflect会沿用该权限
+            method.setAccessible(true);
+            this.handle = MethodHandles.lookup().unreflect(method)
+                    .bindTo(service)
+                    .asSpreader(Object[].class, paramTypes.length)
+                    .asType(INVOKER_TYPE);
+        } catch (IllegalAccessException | SecurityException e) {
+            throw new RpcException("can not resolve invoker for method " + method, e);
+        }
+    }
+
+    boolean matches(Class<?>[] types) {
+        if (types == null) {
+            return paramTypes.length == 0;
+        }
+        if (types.length != paramTypes.length) {
+            return false;
+        }
+        //参数类型由同一个ClassLoader解析 直接比较引用
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] != paramTypes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param args 方法参数 无参方法客户端可能传null
+     * @return the result of the target method execution
+     * @throws Throwable 目标方法抛出的异常原样抛出 不再包装为InvocationTargetException
+     */
+    public Object invoke(Object[] args) throws Throwable {
+        return (Object) handle.invokeExact(args == null ? EMPTY_ARGS : args);
+    }
+}
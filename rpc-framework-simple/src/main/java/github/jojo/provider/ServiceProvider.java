@@ -23,6 +23,14 @@ public interface ServiceProvider {
      */
     Object getService(RpcServiceProperties rpcServiceProperties);
 
+    /**
+     * @param rpcServiceProperties service related attributes
+     * @param methodName           method name
+     * @param paramTypes           method parameter types
+     * @return invoker resolved when the service was added
+     */
+    MethodInvoker getInvoker(RpcServiceProperties rpcServiceProperties, String methodName, Class<?>[] paramTypes);
+
     /**
      * @param service              service object
      * @param rpcServiceProperties service related attributes
@@ -1,19 +1,31 @@
 package github.jojo.provider;
 
+import github.jojo.annotation.RpcMethod;
+import github.jojo.annotation.RpcService;
 import github.jojo.entity.RpcServiceProperties;
+import github.jojo.enums.RejectPolicyEnum;
 import github.jojo.enums.RpcErrorMessageEnum;
 import github.jojo.exception.RpcException;
 import github.jojo.extension.ExtensionLoader;
 import github.jojo.registry.ServiceRegistry;
 import github.jojo.remoting.transport.netty.server.NettyRpcServer;
+import github.jojo.utils.concurrent.threadpool.CustomThreadPoolConfig;
+import github.jojo.utils.concurrent.threadpool.ThreadPoolFactoryUtils;
 import lombok.extern.slf4j.Slf4j;
 
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 /**
  * @author zzj
@@ -29,11 +41,17 @@ public class ServiceProviderImpl implements ServiceProvider {
      * value: service object
      */
     private final Map<String, Object> serviceMap;
+    /**
+     * key: rpc service name
+     * value: method name -> 该名称下所有重载方法的调用器 发布服务时构建
+     */
+    private final Map<String, Map<String, MethodInvoker[]>> invokerMap;
     private final Set<String> registeredService;
     private final ServiceRegistry serviceRegistry;
 
     public ServiceProviderImpl() {
         serviceMap = new ConcurrentHashMap<>();
+        invokerMap = new ConcurrentHashMap<>();
         registeredService = ConcurrentHashMap.newKeySet();
         serviceRegistry = ExtensionLoader.getExtensionLoader(ServiceRegistry.class).getExtension("zk");
     }
@@ -52,6 +70,7 @@ public class ServiceProviderImpl implements ServiceProvider {
             return;
         }
         registeredService.add(rpcServiceName);
+        invokerMap.put(rpcServiceName, resolveInvokers(service, serviceClass, rpcServiceName));
         serviceMap.put(rpcServiceName, service);
         log.info("Add service: {} and interfaces:{}", rpcServiceName, service.getClass().getInterfaces());
     }
@@ -65,6 +84,98 @@ public class ServiceProviderImpl implements ServiceProvider {
         return service;
     }
 
+    @Override
+    public MethodInvoker getInvoker(RpcServiceProperties rpcServiceProperties, String methodName, Class<?>[] paramTypes) {
+        Map<String, MethodInvoker[]> invokers = invokerMap.get(rpcServiceProperties.toRpcServiceName());
+        if (invokers == null) {
+            throw new RpcException(RpcErrorMessageEnum.SERVICE_CAN_NOT_BE_FOUND);
+        }
+        MethodInvoker[] candidates = invokers.get(methodName);
+        if (candidates != null) {
+            for (MethodInvoker invoker : candidates) {
+                if (invoker.matches(paramTypes)) {
+                    return invoker;
+                }
+            }
+        }
+        throw new RpcException(RpcErrorMessageEnum.METHOD_CAN_NOT_BE_FOUND, methodName);
+    }
+
+    /**
+     * 只暴露serviceClass接口中声明的方法 按方法名分组 同名重载方法在调用时按参数类型区分
+     * 实现类上的@RpcService和方法上的@RpcMethod指定了线程数时 为服务/方法创建独立的线程池
+     */
+    private static Map<String, MethodInvoker[]> resolveInvokers(Object service, Class<?> serviceClass, String rpcServiceName) {
+        RpcService rpcService = service.getClass().getAnnotation(RpcService.class);
+        ExecutorService serviceExecutor = null;
+        RejectPolicyEnum serviceRejectPolicy = RejectPolicyEnum.FAIL_FAST;
+        if (rpcService != null && rpcService.threads() > 0) {
+            serviceExecutor = createExecutor("rpc-service-" + rpcServiceName, rpcService.threads(), rpcService.queueSize());
+            serviceRejectPolicy = rpcService.rejectPolicy();
+        }
+        Map<String, MethodInvoker[]> invokers = new HashMap<>();
+        for (Method method : serviceClass.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            ExecutorService executor = serviceExecutor;
+            RejectPolicyEnum rejectPolicy = serviceRejectPolicy;
+            RpcMethod rpcMethod = findRpcMethod(service, method);
+            if (rpcMethod != null && rpcMethod.threads() > 0) {
+                //线程池按方法签名区分 同名重载方法各自使用自己的线程池和配置
+                executor = createExecutor("rpc-method-" + rpcServiceName + "#" + signature(method),
+                        rpcMethod.threads(), rpcMethod.queueSize());
+                rejectPolicy = rpcMethod.rejectPolicy();
+            }
+            MethodInvoker[] overloads = invokers.get(method.getName());
+            MethodInvoker[] merged = overloads == null ? new MethodInvoker[1] : Arrays.copyOf(overloads, overloads.length + 1);
+            merged[merged.length - 1] = new MethodInvoker(service, method, executor, rejectPolicy);
+            invokers.put(method.getName(), merged);
+        }
+        return invokers;
+    }
+
+    /**
+     * 参数类型使用全限定名 不同包中的同名类型不会得到同一个线程池
+     *
+     * @return 方法名加参数类型 例如 hello(java.lang.String,int)
+     */
+    private static String signature(Method method) {
+        StringJoiner params = new StringJoiner(",", method.getName() + "(", ")");
+        for (Class<?> paramType : method.getParameterTypes()) {
+            params.add(paramType.getTypeName());
+        }
+        return params.toString();
+    }
+
+    /**
+     * 先找实现类方法上的注解 再找接口方法上的注解
+     */
+    private static RpcMethod findRpcMethod(Object service, Method method) {
+        try {
+            RpcMethod rpcMethod = service.getClass().getMethod(method.getName(), method.getParameterTypes())
+                    .getAnnotation(RpcMethod.class);
+            if (rpcMethod != null) {
+                return rpcMethod;
+            }
+        } catch (NoSuchMethodException e) {
+            //接口方法一定有public的实现
+        }
+        return method.getAnnotation(RpcMethod.class);
+    }
+
+    /**
+     * 固定线程数、有界队列的线程池 队列满了之后execute抛出RejectedExecutionException
+     */
+    private static ExecutorService createExecutor(String threadNamePrefix, int threads, int queueSize) {
+        CustomThreadPoolConfig customThreadPoolConfig = new CustomThreadPoolConfig();
+        customThreadPoolConfig.setCorePoolSize(threads);
+        customThreadPoolConfig.setMaximumPoolSize(threads);
+        customThreadPoolConfig.setWorkQueue(new ArrayBlockingQueue<>(Math.max(1, queueSize)));
+        log.info("create executor [{}] threads: [{}] queue size: [{}]", threadNamePrefix, threads, queueSize);
+        return ThreadPoolFactoryUtils.createCustomThreadPoolIfAbsent(threadNamePrefix, customThreadPoolConfig);
+    }
+
     @Override
     public void publishService(Object service, RpcServiceProperties rpcServiceProperties) {
         try {
@@ -0,0 +1,60 @@
+package github.jojo.proxy;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/1 15:30
+ * @description -----------以异步的方式调用已有的同步接口----------
+ * <pre>
+ *     CompletableFuture&lt;String&gt; future = RpcAsync.call(() -&gt; helloService.hello(hello));
+ * </pre>
+ * supplier中的第一次远程调用不会阻塞 代理对象立即返回默认值（null/0/false）
+ * 该次调用的结果通过返回的future获取 future在响应到达时由Netty的EventLoop完成
+ * supplier中只应该包含一次远程调用
+ */
+public final class RpcAsync {
+
+    private static final ThreadLocal<Boolean> ASYNC = new ThreadLocal<>();
+    private static final ThreadLocal<CompletableFuture<?>> FUTURE = new ThreadLocal<>();
+
+    private RpcAsync() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> CompletableFuture<T> call(Supplier<T> invocation) {
+        ASYNC.set(Boolean.TRUE);
+        try {
+            T result = invocation.get();
+            CompletableFuture<?> future = FUTURE.get();
+            if (future != null) {
+                return (CompletableFuture<T>) future;
+            }
+            //方法本身声明返回CompletableFuture时 代理对象直接返回了future
+            if (result instanceof CompletableFuture) {
+                return (CompletableFuture<T>) result;
+            }
+            throw new IllegalStateException("no rpc invocation happened in RpcAsync.call");
+        } finally {
+            ASYNC.remove();
+            FUTURE.remove();
+        }
+    }
+
+    /**
+     * 代理对象调用 当前线程处于异步调用模式时返回true 并且清除标记 只有第一次远程调用是异步的
+     */
+    static boolean consumeAsync() {
+        if (ASYNC.get() == null) {
+            return false;
+        }
+        ASYNC.remove();
+        return true;
+    }
+
+    static void setFuture(CompletableFuture<?> future) {
+        FUTURE.set(future);
+    }
+}
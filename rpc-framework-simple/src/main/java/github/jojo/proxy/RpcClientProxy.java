@@ -7,16 +7,16 @@ import github.jojo.exception.RpcException;
 import github.jojo.remoting.dto.RpcRequest;
 import github.jojo.remoting.dto.RpcResponse;
 import github.jojo.remoting.transport.RpcRequestTransport;
-import github.jojo.remoting.transport.netty.client.NettyRpcClient;
-import github.jojo.remoting.transport.socket.SocketRpcClient;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.UUID;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 /**
  * @author zzj
@@ -25,6 +25,8 @@ import java.util.concurrent.CompletableFuture;
  * @description ------------使用JDK的动态代理-----------
  * 调用动态代理对象的接口方法 实际是调用动态代理类中的invoke方法
  * 动态代理使得客户端远程调用方法像在调用本地方法 屏蔽了中间过程
+ * 接口方法声明返回CompletableFuture时为异步调用 同步接口可以通过{@link RpcAsync#call}异步调用
+ * 每个Method的元数据（接口名、参数类型、服务名等）第一次调用时计算并缓存 之后的调用不再重复反射
  */
 @Slf4j
 public class RpcClientProxy implements InvocationHandler {
@@ -35,9 +37,25 @@ public class RpcClientProxy implements InvocationHandler {
      */
     private final RpcRequestTransport rpcRequestTransport;
     private final RpcServiceProperties rpcServiceProperties;
+    /**
+     * 调用的超时时间(ms) 0表示使用客户端默认的超时时间
+     */
+    private final long timeoutMillis;
+    /**
+     * 代理对象的方法 -> 预先计算好的调用元数据 group和version属于代理实例 所以缓存也属于代理实例
+     */
+    private final Map<Method, MethodMetadata> methodMetadata = new ConcurrentHashMap<>();
 
     public RpcClientProxy(RpcRequestTransport rpcRequestTransport, RpcServiceProperties rpcServiceProperties) {
+        this(rpcRequestTransport, rpcServiceProperties, 0);
+    }
+
+    /**
+     * @param timeoutMillis 每次调用的超时时间 见{@link github.jojo.annotation.RpcReference#timeout()}
+     */
+    public RpcClientProxy(RpcRequestTransport rpcRequestTransport, RpcServiceProperties rpcServiceProperties, long timeoutMillis) {
         this.rpcRequestTransport = rpcRequestTransport;
+        this.timeoutMillis = timeoutMillis;
         if (rpcServiceProperties.getGroup() == null) {
             rpcServiceProperties.setGroup("");
         }
@@ -50,6 +68,7 @@ public class RpcClientProxy implements InvocationHandler {
     public RpcClientProxy(RpcRequestTransport rpcRequestTransport) {
         this.rpcRequestTransport = rpcRequestTransport;
         this.rpcServiceProperties = RpcServiceProperties.builder().group("").version("").build();
+        this.timeoutMillis = 0;
     }
 
     /**
@@ -77,35 +96,127 @@ public class RpcClientProxy implements InvocationHandler {
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) {
         log.info("invoked method: [{}]", method.getName());
+        MethodMetadata metadata = methodMetadata.get(method);
+        if (metadata == null) {
+            metadata = methodMetadata.computeIfAbsent(method, MethodMetadata::new);
+        }
+        //当前线程有截止时间时(RpcDeadline.call或者在服务端处理请求) 超时时间不超过剩余的时间
+        long timeout = timeoutMillis;
+        long remaining = RpcDeadline.remainingMillis();
+        if (remaining != RpcDeadline.NO_DEADLINE) {
+            timeout = timeout > 0 ? Math.min(timeout, remaining) : remaining;
+        }
         RpcRequest rpcRequest = RpcRequest.builder()
-                .methodName(method.getName())
+                .methodName(metadata.methodName)
                 .parameters(args)
-                .interfaceName(method.getDeclaringClass().getName())
-                .paramTypes(method.getParameterTypes())
-                .requestId(UUID.randomUUID().toString())
+                .interfaceName(metadata.interfaceName)
+                .paramTypes(metadata.paramTypes)
                 .group(rpcServiceProperties.getGroup())
                 .version(rpcServiceProperties.getVersion())
+                .rpcServiceName(metadata.rpcServiceName)
+                .methodKey(metadata.methodKey)
+                .timeout(timeout)
                 .build();
-        RpcResponse<Object> rpcResponse = null;
-        if (rpcRequestTransport instanceof NettyRpcClient) {
-            CompletableFuture<RpcResponse<Object>> completableFuture = (CompletableFuture<RpcResponse<Object>>) rpcRequestTransport.sendRpcRequest(rpcRequest);
-            //阻塞等待其他线程调用completableFuture.complete()
-            rpcResponse = completableFuture.get();
+        Object sent;
+        if (remaining <= 0) {
+            //已经过期 不再发送请求
+            CompletableFuture<RpcResponse<Object>> expired = new CompletableFuture<>();
+            expired.completeExceptionally(new RpcException(RpcErrorMessageEnum.REQUEST_TIMEOUT, metadata.methodKey));
+            sent = expired;
+        } else {
+            sent = rpcRequestTransport.sendRpcRequest(rpcRequest);
+        }
+        CompletableFuture<RpcResponse<Object>> completableFuture = sent instanceof CompletableFuture
+                ? (CompletableFuture<RpcResponse<Object>>) sent
+                : CompletableFuture.completedFuture((RpcResponse<Object>) sent);
+        boolean futureReturnType = metadata.futureReturnType;
+        if (futureReturnType || RpcAsync.consumeAsync()) {
+            //异步调用: 不阻塞调用线程 响应到达时在EventLoop中检查响应并完成future
+            CompletableFuture<Object> resultFuture = completableFuture.thenApply(rpcResponse -> {
+                this.check(rpcResponse, rpcRequest);
+                return rpcResponse.getData();
+            });
+            if (futureReturnType) {
+                return resultFuture;
+            }
+            RpcAsync.setFuture(resultFuture);
+            return metadata.defaultValue;
         }
-        if (rpcRequestTransport instanceof SocketRpcClient) {
-            rpcResponse = (RpcResponse<Object>) rpcRequestTransport.sendRpcRequest(rpcRequest);
+        RpcResponse<Object> rpcResponse;
+        //阻塞等待其他线程调用completableFuture.complete() 超时或连接断开时future以异常结束
+        //get()通过LockSupport.park等待 在虚拟线程(JDK 21+)中调用时只挂起虚拟线程 不占用平台线程
+        try {
+            rpcResponse = completableFuture.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
         }
-        //接收到响应对象后 判断request ID 与response响应的ID是否相同
+        //请求与响应已经通过帧头中的requestId匹配 这里只检查响应状态
         this.check(rpcResponse, rpcRequest);
         return rpcResponse.getData();
     }
 
+    /**
+     * 异步调用同步接口时代理对象的返回值 基本类型不能返回null
+     */
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0F;
+        }
+        if (type == double.class) {
+            return 0D;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+
+    /**
+     * 调用元数据 每个Method只计算一次
+     * paramTypes在所有请求之间共享 请求发送过程中只读不写
+     */
+    private final class MethodMetadata {
+        private final String interfaceName;
+        private final String methodName;
+        private final Class<?>[] paramTypes;
+        private final String rpcServiceName;
+        private final String methodKey;
+        private final boolean futureReturnType;
+        private final Object defaultValue;
+
+        private MethodMetadata(Method method) {
+            this.interfaceName = method.getDeclaringClass().getName();
+            this.methodName = method.getName();
+            this.paramTypes = method.getParameterTypes();
+            this.rpcServiceName = interfaceName + rpcServiceProperties.getGroup() + rpcServiceProperties.getVersion();
+            this.methodKey = interfaceName + "#" + methodName;
+            this.futureReturnType = method.getReturnType() == CompletableFuture.class;
+            this.defaultValue = defaultValue(method.getReturnType());
+        }
+    }
+
     private void check(RpcResponse<Object> rpcResponse, RpcRequest rpcRequest) {
         if (rpcResponse == null) {
             throw new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
         }
-        if (!rpcRequest.getRequestId().equals(rpcResponse.getRequestId())) {
-            throw new RpcException(RpcErrorMessageEnum.REQUEST_NOT_MATCH_RESPONSE, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
+        if (rpcResponse.getCode() != null && rpcResponse.getCode().equals(RpcResponseCodeEnum.OVERLOADED.getCode())) {
+            //服务端没有处理该请求 调用方可以换一个服务器重试
+            throw new RpcException(RpcErrorMessageEnum.SERVICE_OVERLOADED, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
         }
         if (rpcResponse.getCode() == null || !rpcResponse.getCode().equals(RpcResponseCodeEnum.SUCCESS.getCode())) {
             throw new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
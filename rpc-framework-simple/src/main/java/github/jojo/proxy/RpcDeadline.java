@@ -0,0 +1,67 @@
+package github.jojo.proxy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/4 19:10
+ * @description -----------当前线程上远程调用的截止时间----------
+ * <pre>
+ *     String result = RpcDeadline.call(200, () -&gt; helloService.hello(hello));
+ * </pre>
+ * supplier中的所有远程调用共享同一个截止时间 每次调用的超时时间是剩余的时间
+ * 服务端处理请求时会以请求帧头中的timeout设置截止时间 服务实现中的嵌套调用自动继承剩余的时间
+ * 截止时间只会收紧不会放宽 嵌套的call使用更长的timeout不会超过外层的截止时间
+ */
+public final class RpcDeadline {
+
+    /**
+     * 当前线程没有截止时间时{@link #remainingMillis()}的返回值
+     */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final ThreadLocal<Long> DEADLINE_NANOS = new ThreadLocal<>();
+
+    private RpcDeadline() {
+    }
+
+    /**
+     * @param timeoutMillis supplier中远程调用的总时间
+     */
+    public static <T> T call(long timeoutMillis, Supplier<T> invocation) {
+        return within(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), invocation);
+    }
+
+    /**
+     * @param deadlineNanos 截止时间 与System.nanoTime()比较
+     */
+    public static <T> T within(long deadlineNanos, Supplier<T> invocation) {
+        Long previous = DEADLINE_NANOS.get();
+        //外层的截止时间更早时沿用外层的
+        if (previous == null || deadlineNanos - previous < 0) {
+            DEADLINE_NANOS.set(deadlineNanos);
+        }
+        try {
+            return invocation.get();
+        } finally {
+            if (previous == null) {
+                DEADLINE_NANOS.remove();
+            } else {
+                DEADLINE_NANOS.set(previous);
+            }
+        }
+    }
+
+    /**
+     * @return 距离截止时间的毫秒数 已经过期时小于等于0 没有截止时间时返回{@link #NO_DEADLINE}
+     */
+    public static long remainingMillis() {
+        Long deadline = DEADLINE_NANOS.get();
+        if (deadline == null) {
+            return NO_DEADLINE;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    }
+}
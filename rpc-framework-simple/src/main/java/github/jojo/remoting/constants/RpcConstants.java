@@ -8,10 +8,10 @@ import java.nio.charset.StandardCharsets;
  * @version 1.0
  * @date 2021/1/21 21:06
  * @description ------------自定义传输协议中的一些常量----------
- *  *   0     1     2     3     4        5     6     7     8         9          10      11     12  13  14   15 16
- *  *   +-----+-----+-----+-----+--------+----+----+----+------+-----------+-------+----- --+-----+-----+-------+
- *  *   |   magic   code        |version | full length         | messageType| codec|compress|    RequestId       |
- *  *   +-----------------------+--------+---------------------+-----------+-----------+-----------+------------+
+ *  *   0     1     2     3     4        5     6     7     8         9          10      11     12  13  14   15  16  17  18  19  20
+ *  *   +-----+-----+-----+-----+--------+----+----+----+------+-----------+-------+----- --+-----+-----+-------+-----+-----+-----+-----+
+ *  *   |   magic   code        |version | full length         | messageType| codec|compress|    RequestId       |      timeout          |
+ *  *   +-----------------------+--------+---------------------+-----------+-----------+-----------+------------+-----------------------+
  *  *   |                                                                                                       |
  *  *   |                                         body                                                          |
  *  *   |                                                                                                       |
@@ -19,6 +19,7 @@ import java.nio.charset.StandardCharsets;
  *  *   +-------------------------------------------------------------------------------------------------------+
  *  * 4B  magic code（魔法数）   1B version（版本）   4B full length（消息长度）    1B messageType（消息类型）
  *  * 1B compress（压缩类型） 1B codec（序列化类型）    4B  requestId（请求的Id）
+ *  * 4B timeout（请求剩余的超时时间 毫秒 0表示没有期限 只有请求使用）
  */
 public class RpcConstants {
 
@@ -31,12 +32,13 @@ public class RpcConstants {
     public static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
     /**
      * version information
+     * version 2: 帧头增加4B timeout
      */
-    public static final byte VERSION = 1;
+    public static final byte VERSION = 2;
     /**
      * head length(min length of message)
      */
-    public static final byte TOTAL_LENGTH = 16;
+    public static final byte TOTAL_LENGTH = 20;
     /**
      * messageType:request response
      */
@@ -50,12 +52,21 @@ public class RpcConstants {
      * messageType: pong
      */
     public static final byte HEARTBEAT_RESPONSE_TYPE = 4;
-    public static final int HEAD_LENGTH = 16;
+    /**
+     * messageType: 批量请求/批量响应 body为RpcBatch
+     */
+    public static final byte BATCH_REQUEST_TYPE = 5;
+    public static final byte BATCH_RESPONSE_TYPE = 6;
+    public static final int HEAD_LENGTH = 20;
     public static final String PING = "ping";
     public static final String PONG = "pong";
     /**
      * 最大长度 8MB
      */
     public static final int MAX_FRAME_LENGTH = 8 * 1024 * 1024;
+    /**
+     * 默认连续写出256条消息后强制flush 与Netty FlushConsolidationHandler的默认值一致
+     */
+    public static final int EXPLICIT_FLUSH_AFTER_FLUSHES = 256;
 
 }
@@ -0,0 +1,40 @@
+package github.jojo.remoting.dto;
+
+import lombok.*;
+
+import java.io.Serializable;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/10 20:15
+ * @description ----------批量帧的body: 同一个连接上攒在一起的多个请求（或响应）----------
+ * 整个批次只有一个帧头 只序列化、压缩一次 第i个请求的id、剩余超时时间和数据分别在三个数组的第i位
+ * 解码后由RpcBatchSplitter还原为单个的RpcMessage 之后的handler感知不到批量帧
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+@ToString
+public class RpcBatch implements Serializable {
+
+    private static final long serialVersionUID = 3362081451846735627L;
+    /**
+     * 每个请求的id 服务端在响应中原样返回
+     */
+    private int[] requestIds;
+    /**
+     * 每个请求剩余的超时时间(ms) 0表示没有期限
+     */
+    private int[] timeouts;
+    /**
+     * RpcRequest或者RpcResponse
+     */
+    private Object[] data;
+
+    public int size() {
+        return requestIds == null ? 0 : requestIds.length;
+    }
+}
@@ -33,8 +33,25 @@ public class RpcMessage {
      * request id
      */
     private int requestId;
+    /**
+     * 请求剩余的超时时间(ms) 0表示没有期限 服务端据此丢弃已经过期的请求 并把剩余时间传递给嵌套调用
+     */
+    private int timeout;
+    /**
+     * 服务端解码出请求的时间(System.nanoTime) 只在本地使用 不会写入数据帧
+     */
+    private long receiveNanos;
+    /**
+     * 服务端准入控制通过后占用名额的服务名 请求处理结束后释放 只在本地使用
+     */
+    private String admittedService;
     /**
      * response or request data
      */
     private Object data;
+    /**
+     * 对应的服务方法(interface#method) 只在本地使用 不会写入数据帧
+     * 编码器据此统计每个服务方法的压缩率 决定是否压缩
+     */
+    private String methodKey;
 }
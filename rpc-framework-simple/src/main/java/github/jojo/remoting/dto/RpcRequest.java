@@ -23,7 +23,6 @@ public class RpcRequest implements Serializable {
      * UID号为后续不兼容升级提供可能
      */
     private static final long serialVersionUID = 1905122041950251207L;
-    private String requestId;
     private String interfaceName;
     private String methodName;
     private Object[] parameters;
@@ -33,6 +32,22 @@ public class RpcRequest implements Serializable {
      * group用于处理一个接口有多个实现类
      */
     private String group;
+    /**
+     * 连接上的方法id 0表示未使用方法表 见{@link github.jojo.remoting.transport.netty.codec.MethodTable}
+     * 精简请求中只有methodId和parameters 其余字段为null
+     */
+    private int methodId;
+    /**
+     * 客户端代理预先计算好的服务名(interface name + group + version)和方法key 不参与序列化
+     * 为null时(例如服务端解码得到的请求)按字段现算
+     */
+    private transient String rpcServiceName;
+    private transient String methodKey;
+    /**
+     * 本次调用的超时时间(ms) 由代理根据@RpcReference和当前线程的截止时间计算 0表示使用客户端默认的超时时间
+     * 实际剩余时间写入帧头 不参与序列化
+     */
+    private transient long timeout;
 
     /**
      * 使用builder创建RpcServiceProperties对象并且对属性赋值
@@ -45,4 +60,15 @@ public class RpcRequest implements Serializable {
                 .group(this.getGroup()).build();
     }
 
+    public String toRpcServiceName() {
+        return rpcServiceName != null ? rpcServiceName : toRpcProperties().toRpcServiceName();
+    }
+
+    /**
+     * @return interface name#method name 用于按方法统计压缩率等
+     */
+    public String toMethodKey() {
+        return methodKey != null ? methodKey : interfaceName + "#" + methodName;
+    }
+
 }
@@ -20,7 +20,6 @@ import java.io.Serializable;
 public class RpcResponse<T> implements Serializable {
 
     private static final long serialVersionUID = 715745410605631233L;
-    private String requestId;
     /**
      * response code
      */
@@ -38,15 +37,13 @@ public class RpcResponse<T> implements Serializable {
      * response when it's successful
      *
      * @param data
-     * @param requestId
      * @param <T>
      * @return
      */
-    public static <T> RpcResponse<T> success(T data, String requestId) {
+    public static <T> RpcResponse<T> success(T data) {
         RpcResponse<T> response = new RpcResponse<>();
         response.setCode(RpcResponseCodeEnum.SUCCESS.getCode());
         response.setMessage(RpcResponseCodeEnum.SUCCESS.getMessage());
-        response.setRequestId(requestId);
         if (data != null) {
             response.setData(data);
         }
@@ -2,14 +2,12 @@ package github.jojo.remoting.handler;
 
 import github.jojo.exception.RpcException;
 import github.jojo.factory.SingletonFactory;
+import github.jojo.provider.MethodInvoker;
 import github.jojo.provider.ServiceProvider;
 import github.jojo.provider.ServiceProviderImpl;
 import github.jojo.remoting.dto.RpcRequest;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-
 /**
  * @author zzj
  * @version 1.0
@@ -32,24 +30,39 @@ public class RpcRequestHandler {
      * @return
      */
     public Object handle(RpcRequest rpcRequest) {
-        Object service = serviceProvider.getService(rpcRequest.toRpcProperties());
-        return invokeTargetMethod(rpcRequest, service);
+        return handle(rpcRequest, resolve(rpcRequest));
+    }
+
+    /**
+     * 找到请求对应的方法调用器 服务端在分发到线程池之前调用 据此选择服务/方法的独立线程池
+     *
+     * @param rpcRequest
+     * @return invoker resolved when the service was added
+     */
+    public MethodInvoker resolve(RpcRequest rpcRequest) {
+        return serviceProvider.getInvoker(rpcRequest.toRpcProperties(),
+                rpcRequest.getMethodName(), rpcRequest.getParamTypes());
+    }
+
+    public Object handle(RpcRequest rpcRequest, MethodInvoker invoker) {
+        return invokeTargetMethod(rpcRequest, invoker);
     }
 
     /**
-     * 调用service对应的method（method name存放于request中）
+     * 调用service对应的method 调用器在服务发布时已经解析好 这里不再反射查找方法
      *
      * @param rpcRequest
-     * @param service
+     * @param invoker
      * @return the result of the target method execution
      */
-    private Object invokeTargetMethod(RpcRequest rpcRequest, Object service) {
+    private Object invokeTargetMethod(RpcRequest rpcRequest, MethodInvoker invoker) {
         Object result;
         try {
-            Method method = service.getClass().getMethod(rpcRequest.getMethodName(), rpcRequest.getParamTypes());
-            result = method.invoke(service, rpcRequest.getParameters());
+            result = invoker.invoke(rpcRequest.getParameters());
             log.info("service:[{}] successful invoke method:[{}]", rpcRequest.getInterfaceName(), rpcRequest.getMethodName());
-        } catch (NoSuchMethodException | IllegalArgumentException | InvocationTargetException | IllegalAccessException e) {
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
             throw new RpcException(e.getMessage(), e);
         }
         return result;
@@ -0,0 +1,177 @@
+package github.jojo.remoting.transport.netty;
+
+import github.jojo.enums.RpcConfigEnum;
+import github.jojo.utils.RpcConfigUtils;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/11 20:30
+ * @description -----------Netty传输层的选择：Linux上使用native epoll 否则回退到NIO----------
+ * rpc.transport.type=auto（默认）时epoll可用就使用epoll 即Linux上默认使用epoll 需要之前的NIO行为时配置为nio
+ * epoll在native库不可用时打印原因并回退到NIO
+ * epoll相比NIO：直接调用epoll_wait 不经过JDK的Selector 没有SelectedKeys集合等垃圾对象 并且可以设置Linux特有的socket选项
+ * <p>
+ * 服务端与客户端的EventLoopGroup、Channel类型以及socket选项都从这里获取 保证同一个进程中使用同一种传输层
+ */
+@Slf4j
+@Getter
+public class NettyTransport {
+
+    public static final String AUTO = "auto";
+    public static final String NIO = "nio";
+    public static final String EPOLL = "epoll";
+
+    private final boolean epoll;
+    /**
+     * epoll的触发方式 边缘触发(默认)每次事件只通知一次 读到没有数据为止 系统调用更少
+     */
+    private final boolean edgeTriggered;
+    /**
+     * 服务端监听socket开启SO_REUSEPORT 多个socket可以绑定同一个端口 由内核分配新连接
+     */
+    private final boolean reusePort;
+
+    public NettyTransport() {
+        this(RpcConfigUtils.getString(RpcConfigEnum.TRANSPORT_TYPE, AUTO));
+    }
+
+    public NettyTransport(String type) {
+        this.epoll = resolve(type);
+        this.edgeTriggered = RpcConfigUtils.getBoolean(RpcConfigEnum.TRANSPORT_EPOLL_EDGE_TRIGGERED, true);
+        this.reusePort = RpcConfigUtils.getBoolean(RpcConfigEnum.SERVER_REUSE_PORT, false);
+        log.info("netty transport: [{}]", this);
+    }
+
+    private static boolean resolve(String type) {
+        if (NIO.equalsIgnoreCase(type)) {
+            return false;
+        }
+        if (!EPOLL.equalsIgnoreCase(type) && !AUTO.equalsIgnoreCase(type)) {
+            log.warn("unknown transport type [{}], use auto", type);
+        }
+        if (Epoll.isAvailable()) {
+            return true;
+        }
+        if (EPOLL.equalsIgnoreCase(type)) {
+            log.warn("epoll transport is not available, fall back to nio", Epoll.unavailabilityCause());
+        }
+        return false;
+    }
+
+    public String getName() {
+        return epoll ? EPOLL : NIO;
+    }
+
+    /**
+     * @param nThreads 线程数 0表示使用Netty的默认值(cpu核数*2)
+     */
+    public EventLoopGroup newEventLoopGroup(int nThreads) {
+        return epoll ? new EpollEventLoopGroup(nThreads) : new NioEventLoopGroup(nThreads);
+    }
+
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public Class<? extends SocketChannel> socketChannelClass() {
+        return epoll ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    /**
+     * 设置服务端监听socket和accept得到的连接的epoll选项 NIO时不做任何事
+     */
+    public void configure(ServerBootstrap serverBootstrap) {
+        if (!epoll) {
+            return;
+        }
+        EpollMode epollMode = edgeTriggered ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+        serverBootstrap.option(EpollChannelOption.EPOLL_MODE, epollMode)
+                .childOption(EpollChannelOption.EPOLL_MODE, epollMode);
+        if (reusePort) {
+            serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+    }
+
+    /**
+     * 设置客户端连接的epoll选项 NIO时不做任何事
+     */
+    public void configure(Bootstrap bootstrap) {
+        if (!epoll) {
+            return;
+        }
+        bootstrap.option(EpollChannelOption.EPOLL_MODE, edgeTriggered ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED);
+    }
+
+    /**
+     * @param configured 配置的监听socket数量
+     * @return 实际使用的监听socket数量 只有epoll支持多个
+     */
+    public int acceptors(int configured) {
+        if (configured <= 1) {
+            return 1;
+        }
+        if (!epoll) {
+            log.warn("multiple acceptors require epoll transport, use 1 acceptor");
+            return 1;
+        }
+        return configured;
+    }
+
+    /**
+     * 绑定监听端口 epoll下acceptors大于1时开启SO_REUSEPORT 在同一个端口上绑定acceptors个监听socket
+     * 每次bind都从boss group中取下一个EventLoop 所以boss group的线程数应当等于acceptors
+     * 内核按连接的四元组把新连接分散到各个监听socket上 大量客户端同时重连时accept不再集中在一个线程
+     *
+     * @param port 0表示随机端口 之后的监听socket绑定到第一个socket得到的端口
+     * @return 所有的监听channel
+     */
+    public List<Channel> bind(ServerBootstrap serverBootstrap, String host, int port, int acceptors)
+            throws InterruptedException {
+        int n = acceptors(acceptors);
+        if (n > 1) {
+            serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        List<Channel> channels = new ArrayList<>(n);
+        Channel first = serverBootstrap.bind(host, port).sync().channel();
+        channels.add(first);
+        int boundPort = ((InetSocketAddress) first.localAddress()).getPort();
+        try {
+            for (int i = 1; i < n; i++) {
+                channels.add(serverBootstrap.bind(host, boundPort).sync().channel());
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            channels.forEach(Channel::close);
+            throw e;
+        }
+        return channels;
+    }
+
+    @Override
+    public String toString() {
+        return epoll
+                ? EPOLL + "(edgeTriggered=" + edgeTriggered + ", reusePort=" + reusePort + ")"
+                : NIO;
+    }
+}
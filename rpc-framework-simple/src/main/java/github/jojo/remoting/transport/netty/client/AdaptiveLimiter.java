@@ -0,0 +1,173 @@
+package github.jojo.remoting.transport.netty.client;
+
+import github.jojo.enums.RpcErrorMessageEnum;
+import github.jojo.exception.RpcException;
+import github.jojo.utils.concurrent.threadpool.ThreadPoolFactoryUtils;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/6 16:20
+ * @description -----------客户端对单个服务器地址的自适应并发限制（gradient算法）----------
+ * 长期RTT是RTT的指数移动平均 代表服务器正常负载下的延迟
+ * 每个请求完成时 gradient = 长期RTT / 本次RTT（限制在[0.5, 1]）
+ * newLimit = limit * gradient + sqrt(limit) RTT没有上升时limit按sqrt(limit)增长 RTT上升时按比例收缩
+ * 请求超时、连接断开或者服务端返回OVERLOADED时limit乘以0.9
+ * <p>
+ * 在途请求达到limit后 新的请求最多排队queueTimeout毫秒 队列满或者排队超时后直接失败 调用方可以换一个服务器
+ */
+public class AdaptiveLimiter {
+
+    /**
+     * 排队超时共用一个时间轮
+     */
+    private static final Timer TIMER = new HashedWheelTimer(
+            ThreadPoolFactoryUtils.createThreadFactory("rpc-limiter-queue", true), 10, TimeUnit.MILLISECONDS);
+    private static final int MIN_LIMIT = 1;
+    /**
+     * 新limit的权重 避免单个样本造成limit大幅波动
+     */
+    private static final double SMOOTHING = 0.2;
+    /**
+     * 长期RTT的平均窗口(样本数)
+     */
+    private static final int LONG_WINDOW = 600;
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long queueTimeoutMillis;
+    private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private final LongAdder rejected = new LongAdder();
+    /**
+     * 以下字段只在持有锁时访问
+     */
+    private double limit;
+    private int inFlight;
+    private double longRttNanos;
+
+    /**
+     * @param initialLimit       初始的并发限制
+     * @param maxLimit           并发限制的上限
+     * @param maxQueue           达到限制后最多排队的请求数
+     * @param queueTimeoutMillis 排队的最长时间 小于等于0表示不排队
+     */
+    public AdaptiveLimiter(int initialLimit, int maxLimit, int maxQueue, long queueTimeoutMillis) {
+        this.limit = Math.max(MIN_LIMIT, Math.min(initialLimit, maxLimit));
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+    }
+
+    /**
+     * 申请发送一个请求 返回的future完成后必须调用{@link #release(long, boolean)}
+     *
+     * @return 有空闲名额时立即完成 否则排队 队列满或排队超时时以异常结束
+     */
+    public CompletableFuture<Void> acquire() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                future.complete(null);
+                return future;
+            }
+            if (queueTimeoutMillis > 0 && waiters.size() < maxQueue) {
+                waiters.add(future);
+                TIMER.newTimeout(t -> expire(future), queueTimeoutMillis, TimeUnit.MILLISECONDS);
+                return future;
+            }
+        }
+        reject(future);
+        return future;
+    }
+
+    /**
+     * 请求结束时调用 根据本次的RTT调整limit 并把空出来的名额交给排队的请求
+     *
+     * @param rttNanos 请求从发送到结束的时间
+     * @param dropped  请求超时、连接断开或者服务端过载
+     */
+    public void release(long rttNanos, boolean dropped) {
+        List<CompletableFuture<Void>> granted = null;
+        synchronized (this) {
+            int inFlightBefore = inFlight;
+            inFlight--;
+            update(rttNanos, dropped, inFlightBefore);
+            while (inFlight < (int) limit && !waiters.isEmpty()) {
+                if (granted == null) {
+                    granted = new ArrayList<>();
+                }
+                granted.add(waiters.poll());
+                inFlight++;
+            }
+        }
+        //在锁外完成future 后续的发送逻辑不在锁内执行
+        if (granted != null) {
+            granted.forEach(future -> future.complete(null));
+        }
+    }
+
+    private void update(long rttNanos, boolean dropped, int inFlightBefore) {
+        if (dropped) {
+            limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+            return;
+        }
+        if (longRttNanos == 0) {
+            longRttNanos = rttNanos;
+        } else {
+            longRttNanos += (rttNanos - longRttNanos) / LONG_WINDOW;
+        }
+        //在途请求远小于limit时 RTT不能说明服务器还能承受更多请求 不调整limit
+        if (inFlightBefore < limit / 2) {
+            return;
+        }
+        //负载下降后本次RTT远小于长期RTT 让长期RTT更快地回落
+        if (longRttNanos / rttNanos > 2) {
+            longRttNanos *= 0.95;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, longRttNanos / Math.max(1, rttNanos)));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(MIN_LIMIT, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+
+    private void expire(CompletableFuture<Void> future) {
+        boolean removed;
+        synchronized (this) {
+            removed = waiters.remove(future);
+        }
+        if (removed) {
+            reject(future);
+        }
+    }
+
+    private void reject(CompletableFuture<Void> future) {
+        rejected.increment();
+        future.completeExceptionally(new RpcException(RpcErrorMessageEnum.CLIENT_LIMITED, "limit " + getLimit()));
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return waiters.size();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
@@ -1,11 +1,18 @@
 package github.jojo.remoting.transport.netty.client;
 
+import github.jojo.enums.RpcConfigEnum;
+import github.jojo.factory.SingletonFactory;
+import github.jojo.utils.RpcConfigUtils;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.InetSocketAddress;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author zzj
@@ -13,17 +20,34 @@ import java.util.concurrent.ConcurrentHashMap;
  * @date 2021/1/21 17:20
  * @description ----------【客户端】用于存放、获取客户端与每一个服务器的连接（SocketChannel）---------------
  * 【question】:会同时出现两个一样ip:port的连接吗？
+ * 【answer】:会 每个服务器地址维护一个连接池 最多rpc.client.connectionsPerAddress个连接
+ * 单个连接的读写都在一个EventLoop中 吞吐受限于一个线程 多个连接可以分散到多个EventLoop上
+ * <p>
+ * 1.选择连接时从轮询位置开始 选未完成请求最少的连接 数量相同时按轮询顺序
+ * 2.按需扩容: 一开始只建立一个连接 选中的连接上未完成请求达到阈值且还没有达到上限时 才再建立一个连接
+ * 3.连接关闭后自动从池中移除
  */
 @Slf4j
 public class ChannelProvider {
 
+    private static final int DEFAULT_CONNECTIONS_PER_ADDRESS = 4;
     /**
-     * key->server ip value->channel
+     * 选中的连接上未完成的请求达到该数量时扩容
      */
-    private final Map<String, Channel> channelMap;
+    private static final int GROW_PENDING_THRESHOLD = 16;
+
+    /**
+     * key->server address value->该地址上的连接池
+     */
+    private final Map<InetSocketAddress, ChannelPool> channelMap;
+    private final UnprocessedRequests unprocessedRequests;
+    private final int maxConnections;
 
     public ChannelProvider() {
         channelMap = new ConcurrentHashMap<>();
+        unprocessedRequests = SingletonFactory.getInstance(UnprocessedRequests.class);
+        maxConnections = Math.max(1, RpcConfigUtils.getInt(RpcConfigEnum.CLIENT_CONNECTIONS_PER_ADDRESS,
+                DEFAULT_CONNECTIONS_PER_ADDRESS));
     }
 
     /**
@@ -31,32 +55,81 @@ public class ChannelProvider {
      * InetSocketAddress维护了服务端的IP和port:在分布式rpc情况下 会有多个服务器提供远程调用 也就是一个客户端与多个服务端连接
      *
      * @param inetSocketAddress
-     * @return
+     * @return 该地址上负载最低的可用连接 没有可用连接时返回null
      */
     public Channel get(InetSocketAddress inetSocketAddress) {
-        String key = inetSocketAddress.getHostString();
-        //判断是否存在一个连接（channel）对应当前服务器的ip port
-        if (channelMap.containsKey(key)) {
-            Channel channel = channelMap.get(key);
-            //如果存在 判断当前连接是否可用（与服务器端是否还是连接着的）
-            if (channel != null && channel.isActive()) {
-                return channel;
-            } else {
-                channelMap.remove(key);
-            }
+        ChannelPool pool = channelMap.get(inetSocketAddress);
+        return pool == null ? null : pool.select();
+    }
+
+    /**
+     * 判断是否需要为该地址再建立一个连接 返回true时调用方负责建立连接 并在结束后调用{@link #set}或{@link #growFailed}
+     *
+     * @param selected {@link #get}选中的连接
+     */
+    public boolean tryGrow(InetSocketAddress inetSocketAddress, Channel selected) {
+        ChannelPool pool = channelMap.get(inetSocketAddress);
+        return pool != null && pool.channels.size() < maxConnections
+                && unprocessedRequests.pending(selected) >= GROW_PENDING_THRESHOLD
+                && pool.growing.compareAndSet(false, true);
+    }
+
+    public void growFailed(InetSocketAddress inetSocketAddress) {
+        ChannelPool pool = channelMap.get(inetSocketAddress);
+        if (pool != null) {
+            pool.growing.set(false);
         }
-        return null;
     }
 
     public void set(InetSocketAddress inetSocketAddress, Channel channel) {
-        String key = inetSocketAddress.toString();
-        channelMap.put(key, channel);
+        ChannelPool pool = channelMap.computeIfAbsent(inetSocketAddress, k -> new ChannelPool());
+        pool.channels.add(channel);
+        pool.growing.set(false);
+        log.info("Channel pool of [{}] size :[{}]", inetSocketAddress, pool.channels.size());
+        //连接关闭后从池中移除
+        channel.closeFuture().addListener((ChannelFutureListener) future -> remove(inetSocketAddress, channel));
     }
 
-    public void remove(InetSocketAddress inetSocketAddress) {
-        String key = inetSocketAddress.toString();
-        channelMap.remove(key);
-        log.info("Channel map size :[{}]", channelMap.size());
+    public void remove(InetSocketAddress inetSocketAddress, Channel channel) {
+        ChannelPool pool = channelMap.get(inetSocketAddress);
+        if (pool != null && pool.channels.remove(channel)) {
+            log.info("Channel pool of [{}] size :[{}]", inetSocketAddress, pool.channels.size());
+        }
+    }
+
+    /**
+     * 单个地址上的连接 连接数很少且很少变化 使用CopyOnWriteArrayList 选择连接时无锁遍历
+     */
+    private final class ChannelPool {
+        private final CopyOnWriteArrayList<Channel> channels = new CopyOnWriteArrayList<>();
+        private final AtomicInteger next = new AtomicInteger();
+        /**
+         * 同一时间只扩容一个连接
+         */
+        private final AtomicBoolean growing = new AtomicBoolean();
+
+        private Channel select() {
+            Object[] snapshot = channels.toArray();
+            int size = snapshot.length;
+            if (size == 0) {
+                return null;
+            }
+            int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+            Channel best = null;
+            int bestPending = Integer.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                Channel channel = (Channel) snapshot[(start + i) % size];
+                if (!channel.isActive()) {
+                    continue;
+                }
+                int pending = unprocessedRequests.pending(channel);
+                if (pending < bestPending) {
+                    best = channel;
+                    bestPending = pending;
+                }
+            }
+            return best;
+        }
     }
 
 }
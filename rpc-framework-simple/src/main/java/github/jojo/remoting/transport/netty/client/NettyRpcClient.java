@@ -1,7 +1,11 @@
 package github.jojo.remoting.transport.netty.client;
 
-import github.jojo.enums.CompressTypeEnum;
+import github.jojo.compress.CompressionPolicy;
+import github.jojo.enums.RpcConfigEnum;
+import github.jojo.enums.RpcErrorMessageEnum;
+import github.jojo.enums.RpcResponseCodeEnum;
 import github.jojo.enums.SerializationTypeEnum;
+import github.jojo.exception.RpcException;
 import github.jojo.extension.ExtensionLoader;
 import github.jojo.factory.SingletonFactory;
 import github.jojo.registry.ServiceDiscovery;
@@ -10,21 +14,21 @@ import github.jojo.remoting.dto.RpcMessage;
 import github.jojo.remoting.dto.RpcRequest;
 import github.jojo.remoting.dto.RpcResponse;
 import github.jojo.remoting.transport.RpcRequestTransport;
-import github.jojo.remoting.transport.netty.codec.RpcMessageDecoder;
-import github.jojo.remoting.transport.netty.codec.RpcMessageEncoder;
+import github.jojo.remoting.transport.netty.NettyTransport;
+import github.jojo.utils.RpcConfigUtils;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
-import io.netty.handler.timeout.IdleStateHandler;
-import lombok.SneakyThrows;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -37,9 +41,38 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class NettyRpcClient implements RpcRequestTransport {
 
+    private static final int DEFAULT_LIMITER_INITIAL_LIMIT = 20;
+    private static final int DEFAULT_LIMITER_MAX_LIMIT = 1000;
+    private static final int DEFAULT_LIMITER_QUEUE_SIZE = 100;
+    private static final long DEFAULT_LIMITER_QUEUE_TIMEOUT = 20;
+    private static final long DEFAULT_BATCH_WINDOW_MICROS = 50;
+
     private final ServiceDiscovery serviceDiscovery;
     private final UnprocessedRequests unprocessedRequests;
     private final ChannelProvider channelProvider;
+    /**
+     * 正在建立中的连接 key->server address
+     */
+    private final Map<InetSocketAddress, CompletableFuture<Channel>> connectingFutures = new ConcurrentHashMap<>();
+    /**
+     * 连接失败的退避状态 连接成功后移除
+     */
+    private final Map<InetSocketAddress, ConnectBackoff> connectBackoffs = new ConcurrentHashMap<>();
+    /**
+     * 每个服务器地址的自适应并发限制 rpc.client.limiter.enabled=false时为null
+     */
+    private final Map<InetSocketAddress, AdaptiveLimiter> limiters;
+    private final CompressionPolicy compressionPolicy;
+    /**
+     * 同一连接上攒批的请求数上限 小于等于1时每个请求单独发送
+     */
+    private final int batchMaxSize;
+    private final long batchWindowMicros;
+    /**
+     * 传输层 Linux上默认使用epoll
+     */
+    @Getter
+    private final NettyTransport transport;
     private final Bootstrap bootstrap;
     /**
      * 客户端只有一个线程组 【问题】客户端线程数量？
@@ -48,41 +81,38 @@ public class NettyRpcClient implements RpcRequestTransport {
 
     public NettyRpcClient() {
         //initialize resources such as EventLoopGroup, Bootstrap
-        eventLoopGroup = new NioEventLoopGroup();
+        transport = SingletonFactory.getInstance(NettyTransport.class);
+        eventLoopGroup = transport.newEventLoopGroup(0);
         //创建客户端引导类
         bootstrap = new Bootstrap();
         bootstrap.group(eventLoopGroup)
-                .channel(NioSocketChannel.class)
+                .channel(transport.socketChannelClass())
                 .handler(new LoggingHandler(LogLevel.INFO))
                 //设置连接时间 如果超过5s连接还没有建立 那么认为连接失败
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000)
-                .handler(new ChannelInitializer<SocketChannel>() {
-                    @Override
-                    protected void initChannel(SocketChannel ch) throws Exception {
-                        ChannelPipeline p = ch.pipeline();
-                        //当在15s内没有数据发送给服务器(写事件) 那么就发送一个心跳包 客户端-->服务端
-                        p.addLast(new IdleStateHandler(0, 15, 0, TimeUnit.SECONDS));
-                        p.addLast(new RpcMessageEncoder());
-                        p.addLast(new RpcMessageDecoder());
-                        p.addLast(new NettyRpcClientHandler());
-                    }
-                });
+                .handler(new NettyRpcClientInitializer());
+        //epoll下的socket选项
+        transport.configure(bootstrap);
         this.serviceDiscovery = ExtensionLoader.getExtensionLoader(ServiceDiscovery.class).getExtension("zk");
         this.unprocessedRequests = SingletonFactory.getInstance(UnprocessedRequests.class);
         this.channelProvider = SingletonFactory.getInstance(ChannelProvider.class);
+        this.compressionPolicy = SingletonFactory.getInstance(CompressionPolicy.class);
+        this.limiters = RpcConfigUtils.getBoolean(RpcConfigEnum.CLIENT_LIMITER_ENABLED, false)
+                ? new ConcurrentHashMap<>() : null;
+        this.batchMaxSize = RpcConfigUtils.getInt(RpcConfigEnum.CLIENT_BATCH_MAX_SIZE, 0);
+        this.batchWindowMicros = RpcConfigUtils.getLong(RpcConfigEnum.CLIENT_BATCH_WINDOW, DEFAULT_BATCH_WINDOW_MICROS);
     }
 
     /**
-     * 连接服务端并且返回channel 通过channel可以发送message到服务端
+     * 连接服务端 返回的future在连接建立后完成 通过channel可以发送message到服务端
+     * 连接失败时future以异常结束 不会阻塞调用线程 也不会在EventLoop中抛出异常
      *
      * @param inetSocketAddress server address
-     * @return the channel
-     * @SneakyThrows: 将异常向上转为Throwable 然后再利用泛型强转为RuntimeException 编译后泛型都变为了Object 这种方法巧妙的骗过编译器
-     * 这样我们就不需要显示的try catch处理异常
+     * @return the channel future
      * 【问题】使用CompletableFuture原因?
+     * 【回答】调用方不需要阻塞等待连接建立 连接建立后在回调中直接发送请求
      */
-    @SneakyThrows
-    public Channel doConnect(InetSocketAddress inetSocketAddress) {
+    public CompletableFuture<Channel> doConnect(InetSocketAddress inetSocketAddress) {
         CompletableFuture<Channel> completableFuture = new CompletableFuture<>();
         //connect方法是非阻塞且异步的 该方法返回ChannelFuture
         // 1.可以调用Future.get()来等待异步执行结束
@@ -95,11 +125,11 @@ public class NettyRpcClient implements RpcRequestTransport {
                 log.info("The client has connected [{}] successful!", inetSocketAddress.toString());
                 completableFuture.complete(future.channel());
             } else {
-                throw new IllegalStateException();
+                completableFuture.completeExceptionally(new RpcException(
+                        RpcErrorMessageEnum.CLIENT_CONNECT_SERVER_FAILURE, inetSocketAddress.toString()));
             }
         });
-        //阻塞 直到complete
-        return completableFuture.get();
+        return completableFuture;
     }
 
     /**
@@ -112,54 +142,224 @@ public class NettyRpcClient implements RpcRequestTransport {
     public Object sendRpcRequest(RpcRequest rpcRequest) {
         //build return value
         CompletableFuture<RpcResponse<Object>> resultFuture = new CompletableFuture<>();
+        //超时时间从调用开始计算 等待建立连接的时间也算在内
+        long startNanos = System.nanoTime();
+        long timeoutMillis = rpcRequest.getTimeout() > 0 ? rpcRequest.getTimeout() : unprocessedRequests.defaultTimeoutMillis();
         //build rpc service name by rpcRequest
         //name:interface name+group+version
-        String rpcServiceName = rpcRequest.toRpcProperties().toRpcServiceName();
+        String rpcServiceName = rpcRequest.toRpcServiceName();
         //get server address
         InetSocketAddress inetSocketAddress = serviceDiscovery.lookupService(rpcServiceName);
-        //get server address related channel(connect)
-        Channel channel = getChannel(inetSocketAddress);
-        //虽然getChannel中判断了channel是否active 这里再进行一次判断
-        if (channel.isActive()) {
-            //put unprocessed request
-            unprocessedRequests.put(rpcRequest.getRequestId(), resultFuture);
-            RpcMessage rpcMessage = RpcMessage.builder()
-                    .data(rpcRequest)
-                    .codec(SerializationTypeEnum.KYRO.getCode())
-                    .compress(CompressTypeEnum.GZIP.getCode())
-                    .messageType(RpcConstants.REQUEST_TYPE)
-                    .build();
-            //匿名内部类会隐式的继承一个类或实现一个接口，或者说匿名内部类是一个继承了该类或者实现了该接口的子类匿名对象。
-            //------------------------【基础】 注意这里的lambda创建的匿名内部类实际是继承的ChannelFutureListener
-            //而非GenericFutureListener
-            //原因：ChannelFutureListener extends GenericFutureListener<ChannelFuture> 这样future这个泛型类型确定为了channelFuture
-            //future.channel()才能找到该方法
-            channel.writeAndFlush(rpcMessage).addListener((ChannelFutureListener) future -> {
-                if (future.isSuccess()) {
-                    log.info("client send message: [{}]", rpcMessage);
-                } else {
-                    //发送失败
+        RpcMessage rpcMessage = RpcMessage.builder()
+                .data(rpcRequest)
+                .codec(SerializationTypeEnum.KYRO.getCode())
+                .compress(compressionPolicy.defaultCompressType())
+                .messageType(RpcConstants.REQUEST_TYPE)
+                .methodKey(rpcRequest.toMethodKey())
+                .build();
+        AdaptiveLimiter limiter = limiters == null ? null
+                : limiters.computeIfAbsent(inetSocketAddress, k -> newLimiter());
+        if (limiter == null) {
+            send(inetSocketAddress, rpcMessage, resultFuture, startNanos, timeoutMillis);
+            return resultFuture;
+        }
+        //超过并发限制的请求短暂排队或者直接失败 排队的时间也算在超时时间内
+        limiter.acquire().whenComplete((v, throwable) -> {
+            if (throwable != null) {
+                resultFuture.completeExceptionally(throwable);
+                return;
+            }
+            long sendNanos = System.nanoTime();
+            resultFuture.whenComplete((rpcResponse, e) -> limiter.release(System.nanoTime() - sendNanos,
+                    e != null || rpcResponse == null
+                            || Objects.equals(rpcResponse.getCode(), RpcResponseCodeEnum.OVERLOADED.getCode())));
+            send(inetSocketAddress, rpcMessage, resultFuture, startNanos, timeoutMillis);
+        });
+        return resultFuture;
+    }
+
+    private void send(InetSocketAddress inetSocketAddress, RpcMessage rpcMessage,
+                      CompletableFuture<RpcResponse<Object>> resultFuture, long startNanos, long timeoutMillis) {
+        //get server address related channel(connect) 已有连接时立即完成 否则在连接建立后发送
+        getChannelAsync(inetSocketAddress).whenComplete((channel, throwable) -> {
+            if (throwable != null) {
+                resultFuture.completeExceptionally(throwable);
+                return;
+            }
+            //请求id的分配、未完成请求的登记以及发送都在channel的EventLoop中进行 每个连接的请求表不需要加锁
+            EventLoop eventLoop = channel.eventLoop();
+            if (eventLoop.inEventLoop()) {
+                write(channel, rpcMessage, resultFuture, startNanos, timeoutMillis);
+            } else {
+                eventLoop.execute(() -> write(channel, rpcMessage, resultFuture, startNanos, timeoutMillis));
+            }
+        });
+    }
+
+    private AdaptiveLimiter newLimiter() {
+        return new AdaptiveLimiter(
+                RpcConfigUtils.getInt(RpcConfigEnum.CLIENT_LIMITER_INITIAL_LIMIT, DEFAULT_LIMITER_INITIAL_LIMIT),
+                RpcConfigUtils.getInt(RpcConfigEnum.CLIENT_LIMITER_MAX_LIMIT, DEFAULT_LIMITER_MAX_LIMIT),
+                RpcConfigUtils.getInt(RpcConfigEnum.CLIENT_LIMITER_QUEUE_SIZE, DEFAULT_LIMITER_QUEUE_SIZE),
+                RpcConfigUtils.getLong(RpcConfigEnum.CLIENT_LIMITER_QUEUE_TIMEOUT, DEFAULT_LIMITER_QUEUE_TIMEOUT));
+    }
+
+    /**
+     * @return 某个服务器地址的自适应并发限制 未开启或者还没有请求时返回null
+     */
+    public AdaptiveLimiter getLimiter(InetSocketAddress inetSocketAddress) {
+        return limiters == null ? null : limiters.get(inetSocketAddress);
+    }
+
+
+    /**
+     * @param timeoutMillis 调用的超时时间 小于等于0表示不超时 剩余的时间写入帧头 服务端据此丢弃过期的请求
+     */
+    private void write(Channel channel, RpcMessage rpcMessage, CompletableFuture<RpcResponse<Object>> resultFuture,
+                       long startNanos, long timeoutMillis) {
+        if (!channel.isActive()) {
+            //切换到EventLoop的过程中连接已经断开
+            resultFuture.completeExceptionally(new RpcException(RpcErrorMessageEnum.CONNECTION_CLOSED,
+                    String.valueOf(channel.remoteAddress())));
+            return;
+        }
+        long remainingMillis = 0;
+        if (timeoutMillis > 0) {
+            remainingMillis = timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            if (remainingMillis <= 0) {
+                resultFuture.completeExceptionally(new RpcException(RpcErrorMessageEnum.REQUEST_TIMEOUT,
+                        rpcMessage.getMethodKey() + " timed out before sent"));
+                return;
+            }
+            rpcMessage.setTimeout((int) Math.min(remainingMillis, Integer.MAX_VALUE));
+        }
+        //put unprocessed request 请求id写入帧头 服务端在响应中原样返回
+        int requestId = unprocessedRequests.put(channel, resultFuture, remainingMillis);
+        rpcMessage.setRequestId(requestId);
+        //匿名内部类会隐式的继承一个类或实现一个接口，或者说匿名内部类是一个继承了该类或者实现了该接口的子类匿名对象。
+        //------------------------【基础】 注意这里的lambda创建的匿名内部类实际是继承的ChannelFutureListener
+        //而非GenericFutureListener
+        //原因：ChannelFutureListener extends GenericFutureListener<ChannelFuture> 这样future这个泛型类型确定为了channelFuture
+        //future.channel()才能找到该方法
+        ChannelFutureListener listener = future -> {
+            if (future.isSuccess()) {
+                log.info("client send message: [{}]", rpcMessage);
+            } else {
+                //发送失败
+                unprocessedRequests.remove(channel, requestId);
+                //编码失败时没有写出任何字节 连接仍然可用 只有写出失败才关闭连接
+                if (!(future.cause() instanceof EncoderException)) {
                     future.channel().close();
-                    resultFuture.completeExceptionally(future.cause());
-                    log.error("Send failed:", future.cause());
                 }
-            });
+                resultFuture.completeExceptionally(future.cause());
+                log.error("Send failed:", future.cause());
+            }
+        };
+        if (batchMaxSize > 1) {
+            //与同一连接上的其他请求攒成一个批量帧发送
+            RequestBatcher.get(channel, batchMaxSize, batchWindowMicros).add(rpcMessage, listener);
         } else {
-            throw new IllegalStateException();
+            channel.writeAndFlush(rpcMessage).addListener(listener);
         }
-        return resultFuture;
     }
 
-    public Channel getChannel(InetSocketAddress inetSocketAddress) {
+    /**
+     * 获取到某个服务器地址的连接
+     * 1.连接池中有可用连接时直接返回已完成的future
+     * 2.否则建立连接 同一地址上同时只有一个连接在建立 并发的调用方共享同一个future
+     * 3.连接失败后按指数退避 退避期间的调用直接失败 不会反复冲击还没有启动好的服务器
+     *
+     * @param inetSocketAddress server address
+     * @return the channel future
+     */
+    public CompletableFuture<Channel> getChannelAsync(InetSocketAddress inetSocketAddress) {
         Channel channel = channelProvider.get(inetSocketAddress);
-        if (channel == null) {
-            channel = doConnect(inetSocketAddress);
-            channelProvider.set(inetSocketAddress, channel);
+        if (channel != null) {
+            if (channelProvider.tryGrow(inetSocketAddress, channel)) {
+                //当前连接负载较高 后台再建立一个连接 本次请求仍然使用已有连接
+                doConnect(inetSocketAddress).whenComplete((c, throwable) -> {
+                    if (throwable == null) {
+                        channelProvider.set(inetSocketAddress, c);
+                    } else {
+                        channelProvider.growFailed(inetSocketAddress);
+                        log.warn("grow connection to [{}] failed", inetSocketAddress, throwable);
+                    }
+                });
+            }
+            return CompletableFuture.completedFuture(channel);
         }
-        return channel;
+        return connect(inetSocketAddress);
     }
 
+    /**
+     * 合并同一地址上并发的建立连接请求 并且处理失败退避
+     */
+    private CompletableFuture<Channel> connect(InetSocketAddress inetSocketAddress) {
+        CompletableFuture<Channel> connecting = connectingFutures.get(inetSocketAddress);
+        if (connecting != null) {
+            return connecting;
+        }
+        ConnectBackoff backoff = connectBackoffs.get(inetSocketAddress);
+        if (backoff != null && backoff.isBackingOff()) {
+            CompletableFuture<Channel> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new RpcException(RpcErrorMessageEnum.CLIENT_CONNECT_SERVER_FAILURE,
+                    inetSocketAddress + ", retry after " + backoff.remainingMillis() + "ms"));
+            return failed;
+        }
+        CompletableFuture<Channel> future = new CompletableFuture<>();
+        connecting = connectingFutures.putIfAbsent(inetSocketAddress, future);
+        if (connecting != null) {
+            return connecting;
+        }
+        //检查连接池和登记正在建立的连接之间 其他线程可能刚好建立好了连接
+        Channel connected = channelProvider.get(inetSocketAddress);
+        if (connected != null) {
+            connectingFutures.remove(inetSocketAddress, future);
+            future.complete(connected);
+            return future;
+        }
+        doConnect(inetSocketAddress).whenComplete((channel, throwable) -> {
+            if (throwable == null) {
+                //先放入连接池再移除正在建立的连接 之后的调用方一定能在其中之一找到连接
+                channelProvider.set(inetSocketAddress, channel);
+                connectBackoffs.remove(inetSocketAddress);
+                connectingFutures.remove(inetSocketAddress, future);
+                future.complete(channel);
+            } else {
+                connectBackoffs.computeIfAbsent(inetSocketAddress, k -> new ConnectBackoff()).failed();
+                connectingFutures.remove(inetSocketAddress, future);
+                future.completeExceptionally(throwable);
+            }
+        });
+        return future;
+    }
+
+
     public void close() {
         eventLoopGroup.shutdownGracefully();
     }
+
+    /**
+     * 连接失败后的指数退避 100ms 200ms 400ms ... 最长10s
+     */
+    private static final class ConnectBackoff {
+        private static final long BASE_MILLIS = 100;
+        private static final long MAX_MILLIS = 10_000;
+        private int failures;
+        private long retryAtNanos;
+
+        private synchronized void failed() {
+            failures++;
+            long delay = Math.min(MAX_MILLIS, BASE_MILLIS << Math.min(failures - 1, 16));
+            retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+        }
+
+        private synchronized boolean isBackingOff() {
+            return System.nanoTime() - retryAtNanos < 0;
+        }
+
+        private synchronized long remainingMillis() {
+            return Math.max(0, TimeUnit.NANOSECONDS.toMillis(retryAtNanos - System.nanoTime()));
+        }
+    }
 }
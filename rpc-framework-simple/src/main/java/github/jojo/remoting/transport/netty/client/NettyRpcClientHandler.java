@@ -12,8 +12,6 @@ import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
 
-import java.net.InetSocketAddress;
-
 /**
  * @author zzj
  * @version 1.0
@@ -27,14 +25,12 @@ import java.net.InetSocketAddress;
 public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
 
     /**
-     * 这两个属性值是由单例工厂产生 也就是说 所有handler都使用的同一对象
+     * 由单例工厂产生 也就是说 所有handler都使用的同一对象
      */
     private final UnprocessedRequests unprocessedRequests;
-    private final NettyRpcClient nettyRpcClient;
 
     public NettyRpcClientHandler() {
         this.unprocessedRequests = SingletonFactory.getInstance(UnprocessedRequests.class);
-        this.nettyRpcClient = SingletonFactory.getInstance(NettyRpcClient.class);
     }
 
     /**
@@ -58,7 +54,7 @@ public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
                 } else if (messageType == RpcConstants.RESPONSE_TYPE) {
                     RpcResponse<Object> rpcResponse = (RpcResponse<Object>) tmp.getData();
                     //CompletableFuture 将Response对象设置到此对象中 等待get()方法的调用取出
-                    unprocessedRequests.complete(rpcResponse);
+                    unprocessedRequests.complete(ctx.channel(), tmp.getRequestId(), rpcResponse);
                 }
             }
         } finally {
@@ -83,7 +79,8 @@ public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
             if (state == IdleState.WRITER_IDLE) {
                 //客户端写空闲 则要发送心跳包了
                 log.info("write idle happen [{}]", ctx.channel().remoteAddress());
-                Channel channel = nettyRpcClient.getChannel((InetSocketAddress) ctx.channel().remoteAddress());
+                //连接池中每个连接各自发送心跳
+                Channel channel = ctx.channel();
                 //创建心跳包
                 RpcMessage rpcMessage = RpcMessage.builder()
                         //采用Protostuff序列化方法
@@ -99,6 +96,18 @@ public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    /**
+     * 连接断开 该连接上所有未完成的请求立即失败 不必等到超时
+     *
+     * @param ctx
+     * @throws Exception
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        unprocessedRequests.failAll(ctx.channel());
+        super.channelInactive(ctx);
+    }
+
     /**
      * 在处理客户端消息发生异常时处理的逻辑
      *
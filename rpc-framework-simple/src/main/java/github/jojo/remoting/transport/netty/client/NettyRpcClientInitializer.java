@@ -0,0 +1,52 @@
+package github.jojo.remoting.transport.netty.client;
+
+import github.jojo.enums.RpcConfigEnum;
+import github.jojo.remoting.constants.RpcConstants;
+import github.jojo.remoting.transport.netty.codec.RpcBatchSplitter;
+import github.jojo.remoting.transport.netty.codec.RpcMessageDecoder;
+import github.jojo.remoting.transport.netty.codec.RpcMessageEncoder;
+import github.jojo.utils.RpcConfigUtils;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/9 21:15
+ * @description -----------客户端每个连接的pipeline----------
+ * 所有连接共用一个实例 无状态的handler也在所有连接之间共用
+ */
+@ChannelHandler.Sharable
+public class NettyRpcClientInitializer extends ChannelInitializer<Channel> {
+
+    private final RpcBatchSplitter batchSplitter = new RpcBatchSplitter();
+    /**
+     * 连续写出该数量的消息后强制flush 小于等于0表示不合并flush
+     */
+    private final int explicitFlushAfterFlushes;
+
+    public NettyRpcClientInitializer() {
+        this.explicitFlushAfterFlushes = RpcConfigUtils.getInt(RpcConfigEnum.FLUSH_CONSOLIDATION, RpcConstants.EXPLICIT_FLUSH_AFTER_FLUSHES);
+    }
+
+    @Override
+    protected void initChannel(Channel ch) {
+        ChannelPipeline p = ch.pipeline();
+        //合并flush 放在最靠近head的位置 响应/请求较多时多条消息一次系统调用写出 流量小时不增加延迟
+        if (explicitFlushAfterFlushes > 0) {
+            p.addLast(new FlushConsolidationHandler(explicitFlushAfterFlushes, true));
+        }
+        //当在15s内没有数据发送给服务器(写事件) 那么就发送一个心跳包 客户端-->服务端
+        p.addLast(new IdleStateHandler(0, 15, 0, TimeUnit.SECONDS));
+        p.addLast(new RpcMessageEncoder());
+        p.addLast(new RpcMessageDecoder());
+        p.addLast(batchSplitter);
+        p.addLast(new NettyRpcClientHandler());
+    }
+}
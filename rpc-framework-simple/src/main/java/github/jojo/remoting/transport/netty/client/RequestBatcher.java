@@ -0,0 +1,137 @@
+package github.jojo.remoting.transport.netty.client;
+
+import github.jojo.remoting.constants.RpcConstants;
+import github.jojo.remoting.dto.RpcBatch;
+import github.jojo.remoting.dto.RpcMessage;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.handler.codec.EncoderException;
+import io.netty.util.AttributeKey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/10 21:10
+ * @description -----------客户端每个连接上的请求攒批----------
+ * 第一个请求到达后等待windowMicros微秒 期间同一连接上的请求放入同一个批次 攒满maxBatchSize个时立即发送
+ * 一个批次只有一个帧头 只序列化、压缩一次 也只需要一次write 只有一个请求时按普通请求帧发送
+ * 批量帧编码失败时（例如超过最大帧长度 或者其中某个请求无法序列化）逐个重新发送 只有本身编码失败的请求收到失败
+ * <p>
+ * 挂在channel的attribute上 只在channel所在的EventLoop中访问 不需要加锁
+ */
+public class RequestBatcher {
+
+    private static final AttributeKey<RequestBatcher> REQUEST_BATCHER = AttributeKey.valueOf("requestBatcher");
+
+    private final Channel channel;
+    private final int maxBatchSize;
+    private final long windowMicros;
+    private List<RpcMessage> messages;
+    private List<ChannelFutureListener> listeners;
+    private boolean flushScheduled;
+
+    private RequestBatcher(Channel channel, int maxBatchSize, long windowMicros) {
+        this.channel = channel;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMicros = windowMicros;
+        this.messages = new ArrayList<>(maxBatchSize);
+        this.listeners = new ArrayList<>(maxBatchSize);
+    }
+
+    public static RequestBatcher get(Channel channel, int maxBatchSize, long windowMicros) {
+        RequestBatcher requestBatcher = channel.attr(REQUEST_BATCHER).get();
+        if (requestBatcher == null) {
+            requestBatcher = new RequestBatcher(channel, maxBatchSize, windowMicros);
+            channel.attr(REQUEST_BATCHER).set(requestBatcher);
+        }
+        return requestBatcher;
+    }
+
+    /**
+     * @param rpcMessage 已经分配好请求id的请求
+     * @param listener   请求所在的帧写出后回调 批次写出失败时批次中每个请求的listener都会收到失败
+     */
+    public void add(RpcMessage rpcMessage, ChannelFutureListener listener) {
+        if (!messages.isEmpty() && !sameCodec(messages.get(0), rpcMessage)) {
+            //一个帧只能有一种序列化和压缩类型
+            flush();
+        }
+        messages.add(rpcMessage);
+        listeners.add(listener);
+        if (messages.size() >= maxBatchSize) {
+            flush();
+            return;
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            if (windowMicros > 0) {
+                channel.eventLoop().schedule(this::scheduledFlush, windowMicros, TimeUnit.MICROSECONDS);
+            } else {
+                //只合并同一轮EventLoop中到达的请求
+                channel.eventLoop().execute(this::scheduledFlush);
+            }
+        }
+    }
+
+    private void scheduledFlush() {
+        flushScheduled = false;
+        flush();
+    }
+
+    /**
+     * 立即发送攒下的请求
+     */
+    public void flush() {
+        if (messages.isEmpty()) {
+            return;
+        }
+        List<RpcMessage> batch = messages;
+        List<ChannelFutureListener> batchListeners = listeners;
+        messages = new ArrayList<>(maxBatchSize);
+        listeners = new ArrayList<>(maxBatchSize);
+        if (batch.size() == 1) {
+            channel.writeAndFlush(batch.get(0)).addListener(batchListeners.get(0));
+            return;
+        }
+        channel.writeAndFlush(toBatchMessage(batch)).addListener((ChannelFutureListener) future -> {
+            if (!future.isSuccess() && future.cause() instanceof EncoderException) {
+                //编码失败时没有写出任何字节 逐个发送
+                for (int i = 0; i < batch.size(); i++) {
+                    channel.writeAndFlush(batch.get(i)).addListener(batchListeners.get(i));
+                }
+                return;
+            }
+            for (ChannelFutureListener listener : batchListeners) {
+                listener.operationComplete(future);
+            }
+        });
+    }
+
+    private static RpcMessage toBatchMessage(List<RpcMessage> batch) {
+        int size = batch.size();
+        int[] requestIds = new int[size];
+        int[] timeouts = new int[size];
+        Object[] data = new Object[size];
+        for (int i = 0; i < size; i++) {
+            RpcMessage rpcMessage = batch.get(i);
+            requestIds[i] = rpcMessage.getRequestId();
+            timeouts[i] = rpcMessage.getTimeout();
+            data[i] = rpcMessage.getData();
+        }
+        RpcMessage first = batch.get(0);
+        return RpcMessage.builder()
+                .messageType(RpcConstants.BATCH_REQUEST_TYPE)
+                .codec(first.getCodec())
+                .compress(first.getCompress())
+                .data(RpcBatch.builder().requestIds(requestIds).timeouts(timeouts).data(data).build())
+                .build();
+    }
+
+    private static boolean sameCodec(RpcMessage a, RpcMessage b) {
+        return a.getCodec() == b.getCodec() && a.getCompress() == b.getCompress();
+    }
+}
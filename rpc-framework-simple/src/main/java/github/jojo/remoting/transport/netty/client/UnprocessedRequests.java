@@ -1,38 +1,283 @@
 package github.jojo.remoting.transport.netty.client;
 
+import github.jojo.enums.RpcConfigEnum;
+import github.jojo.enums.RpcErrorMessageEnum;
+import github.jojo.exception.RpcException;
 import github.jojo.remoting.dto.RpcResponse;
+import github.jojo.utils.RpcConfigUtils;
+import github.jojo.utils.concurrent.threadpool.ThreadPoolFactoryUtils;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import lombok.extern.slf4j.Slf4j;
 
-import java.util.Map;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author zzj
  * @version 1.0
  * @date 2021/1/20 22:19
  * @description ---------------【客户端】存放服务器还未处理的request 使用CompletableFuture提高性能------------
+ * 请求id就是帧头中的4B requestId 由每个连接各自递增分配 服务端原样写回响应的帧头 客户端据此找到对应的future
+ * 每个连接一张以int为key的表 挂在channel的attribute上 只在channel所在的EventLoop中访问 不需要并发容器
+ * <p>
+ * 1.每个请求在时间轮（HashedWheelTimer）上登记超时 超时后回到EventLoop中移除并以异常结束future
+ * 2.连接断开（channelInactive）时该连接上所有未完成的请求立即以异常结束 不会一直挂着
+ * 3.超时后才到达的响应只打印日志
+ * 4.提供未完成请求数量与最老请求已等待时间两个指标（所有连接汇总）
  */
+@Slf4j
 public class UnprocessedRequests {
 
+    private static final AttributeKey<PendingTable> PENDING_TABLE = AttributeKey.valueOf("pendingTable");
+    private static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
     /**
-     * key->id value->UnprocessedRequest
+     * 所有连接共用一个时间轮 精度10ms即可
      */
-    private static final Map<String, CompletableFuture<RpcResponse<Object>>>
-            UNPROCESSED_RESPONSE_FUTURES = new ConcurrentHashMap<>();
+    private static final Timer TIMER = new HashedWheelTimer(
+            ThreadPoolFactoryUtils.createThreadFactory("rpc-request-timeout", true), 10, TimeUnit.MILLISECONDS);
+    /**
+     * 还在使用中的请求表 用于汇总指标
+     */
+    private static final Set<PendingTable> TABLES = ConcurrentHashMap.newKeySet();
+
+    private final long defaultTimeoutMillis;
+
+    public UnprocessedRequests() {
+        this.defaultTimeoutMillis = RpcConfigUtils.getLong(RpcConfigEnum.CLIENT_REQUEST_TIMEOUT, DEFAULT_TIMEOUT_MILLIS);
+    }
 
-    public void put(String requestId, CompletableFuture<RpcResponse<Object>> future) {
-        UNPROCESSED_RESPONSE_FUTURES.put(requestId, future);
+    /**
+     * @return rpc.client.requestTimeout 调用没有指定超时时间时使用 小于等于0表示不超时
+     */
+    public long defaultTimeoutMillis() {
+        return defaultTimeoutMillis;
+    }
+
+    /**
+     * 分配请求id并记录future 使用默认超时时间 必须在channel的EventLoop中调用
+     *
+     * @return 请求id 写入帧头
+     */
+    public int put(Channel channel, CompletableFuture<RpcResponse<Object>> future) {
+        return put(channel, future, defaultTimeoutMillis);
+    }
+
+    /**
+     * 分配请求id并记录future 必须在channel的EventLoop中调用
+     *
+     * @param timeoutMillis 超时时间 小于等于0表示不超时
+     * @return 请求id 写入帧头
+     */
+    public int put(Channel channel, CompletableFuture<RpcResponse<Object>> future, long timeoutMillis) {
+        PendingTable table = getOrCreateTable(channel);
+        int requestId = table.nextId();
+        PendingRequest request = new PendingRequest(future, System.nanoTime());
+        if (timeoutMillis > 0) {
+            request.timeout = TIMER.newTimeout(t -> channel.eventLoop().execute(
+                    () -> expire(channel, requestId, timeoutMillis)), timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        table.put(requestId, request);
+        return requestId;
+    }
+
+    /**
+     * 发送失败时移除 必须在channel的EventLoop中调用
+     */
+    public CompletableFuture<RpcResponse<Object>> remove(Channel channel, int requestId) {
+        PendingRequest request = remove0(channel, requestId);
+        if (request == null) {
+            return null;
+        }
+        if (request.timeout != null) {
+            request.timeout.cancel();
+        }
+        return request.future;
     }
 
-    public void complete(RpcResponse<Object> rpcResponse) {
-        CompletableFuture<RpcResponse<Object>> future
-                = UNPROCESSED_RESPONSE_FUTURES.remove(rpcResponse.getRequestId());
+    /**
+     * 收到响应 必须在channel的EventLoop中调用
+     */
+    public void complete(Channel channel, int requestId, RpcResponse<Object> rpcResponse) {
+        CompletableFuture<RpcResponse<Object>> future = remove(channel, requestId);
         if (null != future) {
             //如果返回的response有对应的request 那么将response作为future的完成值 进行赋值
             future.complete(rpcResponse);
         } else {
-            throw new IllegalStateException();
+            //已经超时或者连接上没有这个请求
+            log.warn("no pending request [{}] on channel [{}], response may arrive after timeout", requestId, channel);
+        }
+    }
+
+    /**
+     * 连接断开 该连接上所有未完成的请求以异常结束 必须在channel的EventLoop中调用
+     */
+    public void failAll(Channel channel) {
+        PendingTable table = channel.attr(PENDING_TABLE).getAndSet(null);
+        if (table == null) {
+            return;
+        }
+        TABLES.remove(table);
+        List<PendingRequest> requests = new ArrayList<>(table.requests.values());
+        table.clear();
+        if (!requests.isEmpty()) {
+            log.warn("channel [{}] closed with [{}] pending requests", channel, requests.size());
+        }
+        for (PendingRequest request : requests) {
+            if (request.timeout != null) {
+                request.timeout.cancel();
+            }
+            request.future.completeExceptionally(
+                    new RpcException(RpcErrorMessageEnum.CONNECTION_CLOSED, String.valueOf(channel.remoteAddress())));
+        }
+    }
+
+    /**
+     * @return 单个连接上未完成的请求数量 可以在任意线程调用
+     */
+    public int pending(Channel channel) {
+        PendingTable table = channel.attr(PENDING_TABLE).get();
+        return table == null ? 0 : table.size;
+    }
+
+    /**
+     * @return 当前登记了请求表的连接数 连接断开后应当回落
+     */
+    public int trackedChannels() {
+        return TABLES.size();
+    }
+
+    /**
+     * @return 所有连接上未完成的请求数量
+     */
+    public int inFlight() {
+        int count = 0;
+        for (PendingTable table : TABLES) {
+            count += table.size;
+        }
+        return count;
+    }
+
+    /**
+     * @return 所有连接上最老的未完成请求已经等待的毫秒数 没有未完成请求时为0
+     */
+    public long oldestAgeMillis() {
+        long now = System.nanoTime();
+        long oldest = 0;
+        for (PendingTable table : TABLES) {
+            long start = table.oldestStartNanos;
+            if (start != 0) {
+                oldest = Math.max(oldest, now - start);
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMillis(oldest);
+    }
+
+    private void expire(Channel channel, int requestId, long timeoutMillis) {
+        PendingRequest request = remove0(channel, requestId);
+        if (request != null) {
+            request.future.completeExceptionally(new RpcException(RpcErrorMessageEnum.REQUEST_TIMEOUT,
+                    timeoutMillis + "ms, channel " + channel.remoteAddress()));
+        }
+    }
+
+    /**
+     * 连接断开后请求表已经被failAll移除 之后的移除（发送失败回调、已经排队的超时任务）不能重新创建请求表
+     * 否则每个断开的连接都会在TABLES中留下一张空表
+     */
+    private static PendingRequest remove0(Channel channel, int requestId) {
+        PendingTable table = channel.attr(PENDING_TABLE).get();
+        return table == null ? null : table.remove(requestId);
+    }
+
+    /**
+     * 只有登记新请求时才创建请求表
+     */
+    private static PendingTable getOrCreateTable(Channel channel) {
+        PendingTable table = channel.attr(PENDING_TABLE).get();
+        if (table == null) {
+            table = new PendingTable();
+            channel.attr(PENDING_TABLE).set(table);
+            TABLES.add(table);
+        }
+        return table;
+    }
+
+    private static final class PendingRequest {
+        private final CompletableFuture<RpcResponse<Object>> future;
+        private final long startNanos;
+        private Timeout timeout;
+        private boolean done;
+
+        private PendingRequest(CompletableFuture<RpcResponse<Object>> future, long startNanos) {
+            this.future = future;
+            this.startNanos = startNanos;
         }
     }
 
+    /**
+     * 单个连接上的未完成请求 除了两个指标字段外只在EventLoop中访问
+     */
+    private static final class PendingTable {
+        private final IntObjectMap<PendingRequest> requests = new IntObjectHashMap<>();
+        /**
+         * 按发送顺序排列 队首已经完成的请求在每次移除后弹出 队首就是最老的未完成请求
+         */
+        private final ArrayDeque<PendingRequest> order = new ArrayDeque<>();
+        private int lastId;
+        private volatile int size;
+        private volatile long oldestStartNanos;
+
+        /**
+         * 单调递增 溢出后回绕 跳过0
+         */
+        private int nextId() {
+            int id = ++lastId;
+            if (id == 0) {
+                id = ++lastId;
+            }
+            return id;
+        }
+
+        private void put(int requestId, PendingRequest request) {
+            requests.put(requestId, request);
+            order.addLast(request);
+            size = requests.size();
+            if (order.size() == 1) {
+                oldestStartNanos = request.startNanos;
+            }
+        }
+
+        private PendingRequest remove(int requestId) {
+            PendingRequest request = requests.remove(requestId);
+            if (request == null) {
+                return null;
+            }
+            request.done = true;
+            while (!order.isEmpty() && order.peekFirst().done) {
+                order.pollFirst();
+            }
+            PendingRequest oldest = order.peekFirst();
+            oldestStartNanos = oldest == null ? 0 : oldest.startNanos;
+            size = requests.size();
+            return request;
+        }
+
+        private void clear() {
+            requests.clear();
+            order.clear();
+            size = 0;
+            oldestStartNanos = 0;
+        }
+    }
 }
@@ -0,0 +1,74 @@
+package github.jojo.remoting.transport.netty.codec;
+
+import github.jojo.compress.Compress;
+import github.jojo.enums.CompressTypeEnum;
+import github.jojo.enums.SerializationTypeEnum;
+import github.jojo.extension.ExtensionLoader;
+import github.jojo.serialize.Serializer;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/2/27 10:26
+ * @description -----------序列化器与压缩器的注册表 以帧头中的1B类型编码为数组下标----------
+ * 之前编解码每一帧都要先遍历枚举的values()（每次都会复制一次数组）得到名称 再通过ExtensionLoader按名称查找扩展
+ * 这里在创建时把所有扩展一次性解析到256长度的数组中 编解码时只需要一次数组读取
+ * 帧头中的类型编码没有对应的扩展时直接抛出异常 不再等到反序列化时才失败
+ */
+public class CodecRegistry {
+
+    private static final int SIZE = 256;
+
+    private final Serializer[] serializers = new Serializer[SIZE];
+    private final Compress[] compresses = new Compress[SIZE];
+
+    public CodecRegistry() {
+        ExtensionLoader<Serializer> serializerLoader = ExtensionLoader.getExtensionLoader(Serializer.class);
+        for (SerializationTypeEnum type : SerializationTypeEnum.values()) {
+            serializers[type.getCode() & 0xFF] = serializerLoader.getExtension(type.getName());
+        }
+        ExtensionLoader<Compress> compressLoader = ExtensionLoader.getExtensionLoader(Compress.class);
+        for (CompressTypeEnum type : CompressTypeEnum.values()) {
+            //NONE表示body没有压缩 没有对应的扩展
+            if (type != CompressTypeEnum.NONE) {
+                compresses[type.getCode() & 0xFF] = compressLoader.getExtension(type.getName());
+            }
+        }
+    }
+
+    /**
+     * @param codec 帧头中的序列化类型
+     * @return 对应的序列化器
+     * @throws IllegalArgumentException 未知的序列化类型
+     */
+    public Serializer getSerializer(byte codec) {
+        Serializer serializer = serializers[codec & 0xFF];
+        if (serializer == null) {
+            throw new IllegalArgumentException("Unknown codec type: " + codec);
+        }
+        return serializer;
+    }
+
+    /**
+     * @param compressType 帧头中的压缩类型 不能为NONE
+     * @return 对应的压缩器
+     * @throws IllegalArgumentException 未知的压缩类型
+     */
+    public Compress getCompress(byte compressType) {
+        Compress compress = compresses[compressType & 0xFF];
+        if (compress == null) {
+            throw new IllegalArgumentException("Unknown compress type: " + compressType);
+        }
+        return compress;
+    }
+
+    /**
+     * 校验帧头中的序列化类型与压缩类型 在读取body之前调用
+     */
+    public void check(byte codec, byte compressType) {
+        getSerializer(codec);
+        if (compressType != CompressTypeEnum.NONE.getCode()) {
+            getCompress(compressType);
+        }
+    }
+}
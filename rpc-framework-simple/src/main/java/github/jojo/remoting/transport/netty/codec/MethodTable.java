@@ -0,0 +1,177 @@
+package github.jojo.remoting.transport.netty.codec;
+
+import github.jojo.remoting.dto.RpcRequest;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/2/27 15:40
+ * @description -----------每个连接上的方法表（服务方法 -> int id） 用于精简请求的编码----------
+ * 开启rpc.protocol.compactInvocation后 客户端第一次调用某个方法时发送完整的请求并带上新分配的methodId（相当于声明）
+ * 服务端解码时记下 methodId -> 接口名/方法名/group/version/参数类型
+ * 之后的请求只携带methodId和参数 服务端解码时根据methodId补全
+ * <p>
+ * 同一个连接上的帧是按顺序编码、发送、解码的 所以服务端一定先收到声明再收到精简请求
+ * 声明帧编码或者写出失败时由编码器调用{@link #undeclare(RpcRequest)}撤销声明 下一次调用重新声明
+ * 方法表挂在channel的attribute上 只在channel所在的EventLoop中访问 不需要加锁 连接断开后随channel一起回收
+ */
+public class MethodTable {
+
+    private static final AttributeKey<MethodTable> METHOD_TABLE = AttributeKey.valueOf("methodTable");
+    /**
+     * 单个连接上最多分配的id数量 超过之后的方法直接发送完整请求
+     */
+    private static final int MAX_SIZE = 65535;
+
+    /**
+     * 客户端: 方法签名 -> id
+     */
+    private final Map<Signature, Integer> ids = new HashMap<>();
+    /**
+     * 客户端: 已经分配的id数量 撤销的id不再复用
+     */
+    private int allocated;
+    /**
+     * 服务端: id -> 声明时的方法元数据 不包含参数 避免声明请求的参数随连接一直存活
+     */
+    private final IntObjectMap<RpcRequest> methods = new IntObjectHashMap<>();
+
+    public static MethodTable get(Channel channel) {
+        MethodTable methodTable = channel.attr(METHOD_TABLE).get();
+        if (methodTable == null) {
+            methodTable = new MethodTable();
+            channel.attr(METHOD_TABLE).set(methodTable);
+        }
+        return methodTable;
+    }
+
+    /**
+     * 客户端编码前调用
+     *
+     * @return 已经声明过的方法返回精简请求 第一次调用的方法返回带有新id的完整请求
+     */
+    public RpcRequest compact(RpcRequest rpcRequest) {
+        Signature signature = new Signature(rpcRequest);
+        Integer id = ids.get(signature);
+        if (id != null) {
+            return RpcRequest.builder()
+                    .methodId(id)
+                    .parameters(rpcRequest.getParameters()).build();
+        }
+        if (allocated >= MAX_SIZE) {
+            return rpcRequest;
+        }
+        id = ++allocated;
+        ids.put(signature, id);
+        return RpcRequest.builder()
+                .methodId(id)
+                .interfaceName(rpcRequest.getInterfaceName())
+                .methodName(rpcRequest.getMethodName())
+                .parameters(rpcRequest.getParameters())
+                .paramTypes(rpcRequest.getParamTypes())
+                .version(rpcRequest.getVersion())
+                .group(rpcRequest.getGroup()).build();
+    }
+
+    /**
+     * 客户端声明帧没有送达服务端时调用 撤销该方法的id
+     *
+     * @param declaration {@link #compact(RpcRequest)}返回的声明请求
+     */
+    public void undeclare(RpcRequest declaration) {
+        ids.remove(new Signature(declaration), declaration.getMethodId());
+    }
+
+    /**
+     * @return 声明请求(带有methodId和完整的方法元数据)
+     */
+    public static boolean isDeclaration(RpcRequest rpcRequest) {
+        return rpcRequest.getMethodId() != 0 && rpcRequest.getInterfaceName() != null;
+    }
+
+    /**
+     * 服务端解码后调用
+     *
+     * @return 记录声明 或者根据methodId补全精简请求
+     */
+    public RpcRequest restore(RpcRequest rpcRequest) {
+        int id = rpcRequest.getMethodId();
+        if (id == 0) {
+            return rpcRequest;
+        }
+        if (rpcRequest.getInterfaceName() != null) {
+            methods.put(id, RpcRequest.builder()
+                    .methodId(id)
+                    .interfaceName(rpcRequest.getInterfaceName())
+                    .methodName(rpcRequest.getMethodName())
+                    .paramTypes(rpcRequest.getParamTypes())
+                    .version(rpcRequest.getVersion())
+                    .group(rpcRequest.getGroup()).build());
+            return rpcRequest;
+        }
+        RpcRequest method = methods.get(id);
+        if (method == null) {
+            throw new IllegalStateException("Unknown method id: " + id);
+        }
+        return RpcRequest.builder()
+                .methodId(id)
+                .interfaceName(method.getInterfaceName())
+                .methodName(method.getMethodName())
+                .parameters(rpcRequest.getParameters())
+                .paramTypes(method.getParamTypes())
+                .version(method.getVersion())
+                .group(method.getGroup()).build();
+    }
+
+    /**
+     * 方法签名: 服务（接口名+group+version）+ 方法名 + 参数类型
+     */
+    private static final class Signature {
+        private final String interfaceName;
+        private final String methodName;
+        private final String group;
+        private final String version;
+        private final Class<?>[] paramTypes;
+        private final int hash;
+
+        private Signature(RpcRequest rpcRequest) {
+            this.interfaceName = rpcRequest.getInterfaceName();
+            this.methodName = rpcRequest.getMethodName();
+            this.group = rpcRequest.getGroup();
+            this.version = rpcRequest.getVersion();
+            this.paramTypes = rpcRequest.getParamTypes();
+            this.hash = Objects.hash(interfaceName, methodName, group, version) * 31 + Arrays.hashCode(paramTypes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Signature)) {
+                return false;
+            }
+            Signature that = (Signature) o;
+            return hash == that.hash
+                    && Objects.equals(interfaceName, that.interfaceName)
+                    && Objects.equals(methodName, that.methodName)
+                    && Objects.equals(group, that.group)
+                    && Objects.equals(version, that.version)
+                    && Arrays.equals(paramTypes, that.paramTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
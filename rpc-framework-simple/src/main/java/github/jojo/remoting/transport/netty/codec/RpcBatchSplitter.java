@@ -0,0 +1,46 @@
+package github.jojo.remoting.transport.netty.codec;
+
+import github.jojo.remoting.constants.RpcConstants;
+import github.jojo.remoting.dto.RpcBatch;
+import github.jojo.remoting.dto.RpcMessage;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+
+import java.util.List;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/10 20:40
+ * @description -----------把解码出的批量帧还原为单个的请求/响应 放在RpcMessageDecoder之后----------
+ * 还原后的每个请求单独经过准入控制、分发到各自的线程池 响应也单独写回（多个响应由合并flush一次写出）
+ * 慢请求不会拖住同一批次中的快请求 其他消息原样传递
+ */
+@ChannelHandler.Sharable
+public class RpcBatchSplitter extends MessageToMessageDecoder<RpcMessage> {
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, RpcMessage msg, List<Object> out) {
+        byte messageType = msg.getMessageType();
+        if (messageType != RpcConstants.BATCH_REQUEST_TYPE && messageType != RpcConstants.BATCH_RESPONSE_TYPE) {
+            out.add(msg);
+            return;
+        }
+        byte entryType = messageType == RpcConstants.BATCH_REQUEST_TYPE
+                ? RpcConstants.REQUEST_TYPE : RpcConstants.RESPONSE_TYPE;
+        RpcBatch rpcBatch = (RpcBatch) msg.getData();
+        int[] timeouts = rpcBatch.getTimeouts();
+        for (int i = 0; i < rpcBatch.size(); i++) {
+            int timeout = timeouts == null ? 0 : timeouts[i];
+            out.add(RpcMessage.builder()
+                    .messageType(entryType)
+                    .codec(msg.getCodec())
+                    .compress(msg.getCompress())
+                    .requestId(rpcBatch.getRequestIds()[i])
+                    .timeout(timeout)
+                    .receiveNanos(timeout > 0 ? msg.getReceiveNanos() : 0)
+                    .data(rpcBatch.getData()[i]).build());
+        }
+    }
+}
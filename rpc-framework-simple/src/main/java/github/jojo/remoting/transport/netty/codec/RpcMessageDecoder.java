@@ -1,10 +1,9 @@
 package github.jojo.remoting.transport.netty.codec;
 
-import github.jojo.compress.Compress;
 import github.jojo.enums.CompressTypeEnum;
-import github.jojo.enums.SerializationTypeEnum;
-import github.jojo.extension.ExtensionLoader;
+import github.jojo.factory.SingletonFactory;
 import github.jojo.remoting.constants.RpcConstants;
+import github.jojo.remoting.dto.RpcBatch;
 import github.jojo.remoting.dto.RpcMessage;
 import github.jojo.remoting.dto.RpcRequest;
 import github.jojo.remoting.dto.RpcResponse;
@@ -20,10 +19,10 @@ import java.util.Arrays;
 /**
  * custom protocol decoder
  * <pre>
- *   0     1     2     3     4        5     6     7     8         9          10      11     12  13  14   15 16
- *   +-----+-----+-----+-----+--------+----+----+----+------+-----------+-------+----- --+-----+-----+-------+
- *   |   magic   code        |version | full length         | messageType| codec|compress|    RequestId       |
- *   +-----------------------+--------+---------------------+-----------+-----------+-----------+------------+
+ *   0     1     2     3     4        5     6     7     8         9          10      11     12  13  14   15  16  17  18  19  20
+ *   +-----+-----+-----+-----+--------+----+----+----+------+-----------+-------+----- --+-----+-----+-------+-----+-----+-----+-----+
+ *   |   magic   code        |version | full length         | messageType| codec|compress|    RequestId       |      timeout          |
+ *   +-----------------------+--------+---------------------+-----------+-----------+-----------+------------+-----------------------+
  *   |                                                                                                       |
  *   |                                         body                                                          |
  *   |                                                                                                       |
@@ -31,7 +30,8 @@ import java.util.Arrays;
  *   +-------------------------------------------------------------------------------------------------------+
  * 4B  magic code（魔法数）   1B version（版本）   4B full length（消息长度）    1B messageType（消息类型）
  * 1B compress（压缩类型） 1B codec（序列化类型）    4B  requestId（请求的Id）
- * body（object类型数据）
+ * 4B timeout（请求剩余的超时时间 毫秒 0表示没有期限 只有请求使用）
+ * body（object类型数据 批量帧为RpcBatch 每个请求的id和超时时间在body中）
  * @author zzj
  * @version 1.0
  * @date 2021/1/25 16:30
@@ -44,6 +44,8 @@ import java.util.Arrays;
 @Slf4j
 public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
 
+    private final CodecRegistry codecRegistry;
+
     /**
      * 无参构造 根据我们自定义的协议长度 设置LengthFieldBasedFrameDecoder的四个关键参数
      */
@@ -70,6 +72,7 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
     public RpcMessageDecoder(int maxFrameLength, int lengthFieldOffset, int lengthFieldLength,
                              int lengthAdjustment, int initialBytesToStrip) {
         super(maxFrameLength, lengthFieldOffset, lengthFieldLength, lengthAdjustment, initialBytesToStrip);
+        this.codecRegistry = SingletonFactory.getInstance(CodecRegistry.class);
     }
 
     /**
@@ -87,7 +90,7 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
             ByteBuf frame = (ByteBuf) decoded;
             if (frame.readableBytes() >= RpcConstants.HEAD_LENGTH) {
                 try {
-                    return decodeFrame(frame);
+                    return decodeFrame(ctx, frame);
                 } catch (Exception e) {
                     log.error("Decode frame error!", e);
                     throw e;
@@ -104,10 +107,11 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
     /**
      * 解码的业务逻辑
      *
-     * @param in
+     * @param ctx 用于分配解压结果的ByteBuf 以及获取连接上的方法表
+     * @param in  完整的一帧
      * @return
      */
-    private Object decodeFrame(ByteBuf in) {
+    private Object decodeFrame(ChannelHandlerContext ctx, ByteBuf in) {
         //ByteBuf in 必须保证顺序读取
         checkMagicNumber(in);
         checkVersion(in);
@@ -117,9 +121,12 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
         byte codecType = in.readByte();
         byte compressType = in.readByte();
         int requestId = in.readInt();
+        int timeout = in.readInt();
         RpcMessage rpcMessage = RpcMessage.builder()
                 .codec(codecType)
                 .requestId(requestId)
+                .timeout(timeout)
+                .receiveNanos(timeout > 0 || messageType == RpcConstants.BATCH_REQUEST_TYPE ? System.nanoTime() : 0)
                 .compress(compressType)
                 .messageType(messageType).build();
         if (messageType == RpcConstants.HEARTBEAT_REQUEST_TYPE) {
@@ -130,31 +137,56 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
             rpcMessage.setData(RpcConstants.PONG);
             return rpcMessage;
         }
+        //未知的序列化类型或压缩类型 在处理body之前直接拒绝
+        codecRegistry.check(codecType, compressType);
         int bodyLength = fullLength - RpcConstants.HEAD_LENGTH;
         //注意即使不是心跳包 也可能存在data长度为0的情况
         if (bodyLength > 0) {
-            byte[] bs = new byte[bodyLength];
-            in.readBytes(bs);
-            //解压
-            String compressName = CompressTypeEnum.getName(compressType);
-            Compress compress = ExtensionLoader.getExtensionLoader(Compress.class)
-                    .getExtension(compressName);
-            bs = compress.decompress(bs);
-            //反序列化对象
-            String codecName = SerializationTypeEnum.getName(rpcMessage.getCodec());
-            Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class)
-                    .getExtension(codecName);
-            if (messageType == RpcConstants.REQUEST_TYPE) {
-                RpcRequest tmpValue = serializer.deserialize(bs, RpcRequest.class);
-                rpcMessage.setData(tmpValue);
+            //body以切片的形式读取 与frame共享内存 不拷贝到堆上
+            ByteBuf body = in.readSlice(bodyLength);
+            //解压 压缩类型为NONE时直接从切片反序列化
+            ByteBuf decompressed;
+            if (compressType == CompressTypeEnum.NONE.getCode()) {
+                decompressed = body.retain();
             } else {
-                RpcResponse tmpValue = serializer.deserialize(bs, RpcResponse.class);
-                rpcMessage.setData(tmpValue);
+                decompressed = codecRegistry.getCompress(compressType).decompress(body, ctx.alloc());
+            }
+            try {
+                //反序列化对象
+                Serializer serializer = codecRegistry.getSerializer(codecType);
+                if (messageType == RpcConstants.REQUEST_TYPE) {
+                    RpcRequest tmpValue = serializer.deserialize(decompressed, RpcRequest.class);
+                    //精简请求根据连接上的方法表补全
+                    rpcMessage.setData(MethodTable.get(ctx.channel()).restore(tmpValue));
+                } else if (messageType == RpcConstants.BATCH_REQUEST_TYPE
+                        || messageType == RpcConstants.BATCH_RESPONSE_TYPE) {
+                    RpcBatch tmpValue = serializer.deserialize(decompressed, RpcBatch.class);
+                    if (messageType == RpcConstants.BATCH_REQUEST_TYPE) {
+                        restore(ctx, tmpValue);
+                    }
+                    rpcMessage.setData(tmpValue);
+                } else {
+                    RpcResponse tmpValue = serializer.deserialize(decompressed, RpcResponse.class);
+                    rpcMessage.setData(tmpValue);
+                }
+            } finally {
+                decompressed.release();
             }
         }
         return rpcMessage;
     }
 
+    /**
+     * 批量请求中的精简请求按顺序补全 声明一定在引用它的请求之前
+     */
+    private static void restore(ChannelHandlerContext ctx, RpcBatch rpcBatch) {
+        MethodTable methodTable = MethodTable.get(ctx.channel());
+        Object[] data = rpcBatch.getData();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = methodTable.restore((RpcRequest) data[i]);
+        }
+    }
+
     private void checkVersion(ByteBuf in) {
         //version 1B
         byte version = in.readByte();
@@ -164,14 +196,16 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
     }
 
     private void checkMagicNumber(ByteBuf in) {
-        //读取4B魔数
+        //读取4B魔数 逐字节比较 不再为每一帧创建临时数组
         int len = RpcConstants.MAGIC_NUMBER.length;
-        byte[] tmp = new byte[len];
-        in.readBytes(tmp);
+        int readerIndex = in.readerIndex();
         for (int i = 0; i < len; i++) {
-            if (tmp[i] != RpcConstants.MAGIC_NUMBER[i]) {
+            if (in.getByte(readerIndex + i) != RpcConstants.MAGIC_NUMBER[i]) {
+                byte[] tmp = new byte[len];
+                in.getBytes(readerIndex, tmp);
                 throw new IllegalArgumentException("Unknown magic code: " + Arrays.toString(tmp));
             }
         }
+        in.skipBytes(len);
     }
 }
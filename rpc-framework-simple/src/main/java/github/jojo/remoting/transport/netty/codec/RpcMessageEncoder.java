@@ -1,18 +1,25 @@
 package github.jojo.remoting.transport.netty.codec;
 
 import github.jojo.compress.Compress;
+import github.jojo.compress.CompressionPolicy;
 import github.jojo.enums.CompressTypeEnum;
-import github.jojo.enums.SerializationTypeEnum;
-import github.jojo.extension.ExtensionLoader;
+import github.jojo.enums.RpcConfigEnum;
+import github.jojo.factory.SingletonFactory;
 import github.jojo.remoting.constants.RpcConstants;
+import github.jojo.remoting.dto.RpcBatch;
 import github.jojo.remoting.dto.RpcMessage;
+import github.jojo.remoting.dto.RpcRequest;
 import github.jojo.serialize.Serializer;
+import github.jojo.utils.RpcConfigUtils;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToByteEncoder;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author zzj
@@ -21,10 +28,10 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @description -----------------自定义传输协议==自定义编码器 负责处理“出站”消息，将消息格式转换为字节数组然后写入到ByteBuf对象中------------
  * <p>
  * * <pre>
- *  *   0     1     2     3     4        5     6     7     8         9          10      11     12  13  14   15 16
- *  *   +-----+-----+-----+-----+--------+----+----+----+------+-----------+-------+----- --+-----+-----+-------+
- *  *   |   magic   code        |version | full length         | messageType| codec|compress|    RequestId       |
- *  *   +-----------------------+--------+---------------------+-----------+-----------+-----------+------------+
+ *  *   0     1     2     3     4        5     6     7     8         9          10      11     12  13  14   15  16  17  18  19  20
+ *  *   +-----+-----+-----+-----+--------+----+----+----+------+-----------+-------+----- --+-----+-----+-------+-----+-----+-----+-----+
+ *  *   |   magic   code        |version | full length         | messageType| codec|compress|    RequestId       |      timeout          |
+ *  *   +-----------------------+--------+---------------------+-----------+-----------+-----------+------------+-----------------------+
  *  *   |                                                                                                       |
  *  *   |                                         body                                                          |
  *  *   |                                                                                                       |
@@ -32,7 +39,8 @@ import java.util.concurrent.atomic.AtomicInteger;
  *  *   +-------------------------------------------------------------------------------------------------------+
  *  * 4B  magic code（魔法数）   1B version（版本）   4B full length（消息长度）    1B messageType（消息类型）
  *  * 1B compress（压缩类型） 1B codec（序列化类型）    4B  requestId（请求的Id）
- *  * body（object类型数据）
+ *  * 4B timeout（请求剩余的超时时间 毫秒 0表示没有期限 只有请求使用）
+ *  * body（object类型数据 批量帧为RpcBatch 每个请求的id和超时时间在body中）
  *  * </pre>
  * <p>
  * 魔法数magic code ： 通常是 4 个字节。这个魔数主要是为了筛选来到服务端的数据包，有了这个魔数之后，服务端首先取出前面四个字节进行比对，
@@ -43,11 +51,32 @@ import java.util.concurrent.atomic.AtomicInteger;
 @Slf4j
 public class RpcMessageEncoder extends MessageToByteEncoder<RpcMessage> {
 
-    private static final AtomicInteger ATOMIC_INTEGER = new AtomicInteger(0);
+    /**
+     * 压缩类型字段在帧中的偏移: 魔数4B + 版本1B + 消息长度4B + 消息类型1B + 序列化类型1B
+     */
+    private static final int COMPRESS_TYPE_OFFSET = 11;
+
+    private final CompressionPolicy compressionPolicy;
+    private final CodecRegistry codecRegistry;
+    /**
+     * 是否使用方法表精简请求（rpc.protocol.compactInvocation）
+     */
+    private final boolean compactInvocation;
+    /**
+     * 当前帧中的方法声明 写出失败时撤销 只在channel所在的EventLoop中访问
+     */
+    private List<RpcRequest> declarations;
+
+    public RpcMessageEncoder() {
+        this.compressionPolicy = SingletonFactory.getInstance(CompressionPolicy.class);
+        this.codecRegistry = SingletonFactory.getInstance(CodecRegistry.class);
+        this.compactInvocation = RpcConfigUtils.getBoolean(RpcConfigEnum.COMPACT_INVOCATION, false);
+    }
 
     /**
-     * 将RpcMessage编码成字节数组输出
+     * 将RpcMessage编码后直接写入出站的ByteBuf
      * 注意这里 RpcMessage是整段放入ByteBuf中输出的，没有拆包，直接传输
+     * 【零拷贝】body直接序列化到out中 只有需要压缩时才借助一个池化的临时ByteBuf 最后回填压缩类型与消息长度
      * @param ctx
      * @param rpcMessage
      * @param out
@@ -55,6 +84,9 @@ public class RpcMessageEncoder extends MessageToByteEncoder<RpcMessage> {
      */
     @Override
     protected void encode(ChannelHandlerContext ctx, RpcMessage rpcMessage, ByteBuf out) throws Exception {
+        declarations = null;
+        //记录当前消息在out中的起始位置 用于回填消息长度
+        int startIndex = out.writerIndex();
         try {
             //首先是4B魔数magic code 4B
             out.writeBytes(RpcConstants.MAGIC_NUMBER);
@@ -67,43 +99,132 @@ public class RpcMessageEncoder extends MessageToByteEncoder<RpcMessage> {
             out.writeByte(messageType);
             //序列化类型 1B
             out.writeByte(rpcMessage.getCodec());
-            //压缩类型 byte-->String("gzip") 1B
-            out.writeByte(CompressTypeEnum.GZIP.getCode());
-            //请求ID 并发环境下 使用原子自增Atomic 4B
-            out.writeInt(ATOMIC_INTEGER.getAndIncrement());
+            //压缩类型 1B 先写NONE占位 body写完后根据压缩策略回填实际使用的压缩类型
+            out.writeByte(CompressTypeEnum.NONE.getCode());
+            //请求ID 4B 客户端按连接分配 服务端响应时原样写回 用于匹配请求与响应
+            out.writeInt(rpcMessage.getRequestId());
+            //剩余超时时间 4B 响应和心跳为0
+            out.writeInt(rpcMessage.getTimeout());
 
-            //请求体body的序列化
-            byte[] bodyBytes = null;
-            //请求头长度16B
-            int fullLength = RpcConstants.HEAD_LENGTH;
             //如果请求不是心跳包 那么请求长度fullLength= head length + body length
             if (messageType != RpcConstants.HEARTBEAT_REQUEST_TYPE
                     && messageType != RpcConstants.HEARTBEAT_RESPONSE_TYPE) {
                 //序列化rpcMessage中的data（封装的是request或response）
-                String codecName = SerializationTypeEnum.getName(rpcMessage.getCodec());
-                log.info("codec name: [{}] ", codecName);
-                Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class)
-                        .getExtension(codecName);
-                bodyBytes = serializer.serialize(rpcMessage.getData());
-                //进一步优化 GZIP压缩技术
-                String compressName = CompressTypeEnum.getName(rpcMessage.getCompress());
-                Compress compress = ExtensionLoader.getExtensionLoader(Compress.class)
-                        .getExtension(compressName);
-                bodyBytes = compress.compress(bodyBytes);
-                fullLength += bodyBytes.length;
+                Serializer serializer = codecRegistry.getSerializer(rpcMessage.getCodec());
+                //序列化结果直接写入out 大部分小消息不需要压缩 也就不需要任何中间缓冲
+                Object data = rpcMessage.getData();
+                if (compactInvocation && messageType == RpcConstants.REQUEST_TYPE) {
+                    //已经声明过的方法只发送methodId和参数
+                    data = compact(ctx, (RpcRequest) data);
+                } else if (compactInvocation && messageType == RpcConstants.BATCH_REQUEST_TYPE) {
+                    data = compact(ctx, (RpcBatch) data);
+                }
+                int bodyStart = out.writerIndex();
+                serializer.serialize(data, out);
+                int bodyLength = out.writerIndex() - bodyStart;
+                byte compressType = compressionPolicy.select(rpcMessage.getMethodKey(), rpcMessage.getCompress(), bodyLength);
+                if (compressType != CompressTypeEnum.NONE.getCode()) {
+                    compressType = compressBody(ctx, rpcMessage.getMethodKey(), compressType, out, bodyStart, bodyLength);
+                }
+                out.setByte(startIndex + COMPRESS_TYPE_OFFSET, compressType);
             }
-            if (bodyBytes != null) {
-                out.writeBytes(bodyBytes);
+            //数据长度fullLength最终才能确定 直接回填到长度字段（魔数4B + 版本1B 之后）
+            int fullLength = out.writerIndex() - startIndex;
+            if (fullLength > RpcConstants.MAX_FRAME_LENGTH) {
+                //对方的解码器会拒绝超长的帧并关闭连接 连接上所有的请求都会失败 所以在发送前就让这一条消息失败
+                throw new EncoderException("frame length " + fullLength + " exceeds max frame length " + RpcConstants.MAX_FRAME_LENGTH);
             }
-            //数据长度fullLength最终才能确定
-            int writeIndex = out.writerIndex();
-            //1 为版本version 1B
-            out.writerIndex(writeIndex - fullLength + RpcConstants.MAGIC_NUMBER.length + 1);
-            out.writeInt(fullLength);
-            //reset index
-            out.writerIndex(writeIndex);
+            out.setInt(startIndex + RpcConstants.MAGIC_NUMBER.length + 1, fullLength);
         } catch (Exception e) {
+            //声明没有发出 撤销后下一次调用重新声明
+            undeclare(ctx, declarations);
+            declarations = null;
+            //丢弃写了一半的帧 抛出异常使write的promise失败 由调用方的listener处理
+            out.writerIndex(startIndex);
             log.error("Encode request error!", e);
+            throw e instanceof EncoderException ? (EncoderException) e : new EncoderException(e);
+        }
+    }
+
+    /**
+     * 帧中有方法声明时 写出失败则撤销声明 否则之后的精简请求在服务端找不到methodId
+     */
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        super.write(ctx, msg, promise);
+        List<RpcRequest> frameDeclarations = declarations;
+        if (frameDeclarations != null) {
+            declarations = null;
+            if (!promise.isVoid()) {
+                promise.addListener(future -> {
+                    if (!future.isSuccess()) {
+                        undeclare(ctx, frameDeclarations);
+                    }
+                });
+            }
+        }
+    }
+
+    private static void undeclare(ChannelHandlerContext ctx, List<RpcRequest> frameDeclarations) {
+        if (frameDeclarations == null) {
+            return;
+        }
+        MethodTable methodTable = MethodTable.get(ctx.channel());
+        for (RpcRequest declaration : frameDeclarations) {
+            methodTable.undeclare(declaration);
+        }
+    }
+
+    /**
+     * 精简请求 并记录当前帧中的方法声明
+     */
+    private RpcRequest compact(ChannelHandlerContext ctx, RpcRequest rpcRequest) {
+        RpcRequest compacted = MethodTable.get(ctx.channel()).compact(rpcRequest);
+        if (MethodTable.isDeclaration(compacted)) {
+            if (declarations == null) {
+                declarations = new ArrayList<>(1);
+            }
+            declarations.add(compacted);
+        }
+        return compacted;
+    }
+
+    /**
+     * 批量请求中的每个请求按顺序精简 不修改原批次
+     */
+    private RpcBatch compact(ChannelHandlerContext ctx, RpcBatch rpcBatch) {
+        Object[] data = rpcBatch.getData();
+        Object[] compacted = new Object[data.length];
+        for (int i = 0; i < data.length; i++) {
+            compacted[i] = compact(ctx, (RpcRequest) data[i]);
+        }
+        return RpcBatch.builder()
+                .requestIds(rpcBatch.getRequestIds())
+                .timeouts(rpcBatch.getTimeouts())
+                .data(compacted).build();
+    }
+
+    /**
+     * 将out中已经序列化好的body压缩后替换原body 压缩后反而更大则保留原body
+     *
+     * @return 实际使用的压缩类型
+     */
+    private byte compressBody(ChannelHandlerContext ctx, String methodKey, byte compressType,
+                              ByteBuf out, int bodyStart, int bodyLength) {
+        Compress compress = codecRegistry.getCompress(compressType);
+        ByteBuf compressed = ctx.alloc().buffer(bodyLength);
+        try {
+            compress.compress(out.slice(bodyStart, bodyLength), compressed);
+            int compressedLength = compressed.readableBytes();
+            compressionPolicy.record(methodKey, compressType, bodyLength, compressedLength);
+            if (compressedLength >= bodyLength) {
+                return CompressTypeEnum.NONE.getCode();
+            }
+            out.writerIndex(bodyStart);
+            out.writeBytes(compressed);
+            return compressType;
+        } finally {
+            compressed.release();
         }
     }
 }
@@ -0,0 +1,59 @@
+package github.jojo.remoting.transport.netty.server;
+
+import github.jojo.enums.CompressTypeEnum;
+import github.jojo.enums.RpcResponseCodeEnum;
+import github.jojo.enums.SerializationTypeEnum;
+import github.jojo.factory.SingletonFactory;
+import github.jojo.remoting.constants.RpcConstants;
+import github.jojo.remoting.dto.RpcMessage;
+import github.jojo.remoting.dto.RpcRequest;
+import github.jojo.remoting.dto.RpcResponse;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/5 20:50
+ * @description -----------在IO线程中对请求做准入控制 位于解码器之后、业务线程池中的NettyRpcServerHandler之前----------
+ * 超过上限的请求在IO线程中直接返回OVERLOADED响应 不会在业务线程池的队列中积压
+ * 名额由NettyRpcServerHandler在请求处理结束时释放
+ */
+@Slf4j
+@ChannelHandler.Sharable
+public class AdmissionControlHandler extends ChannelInboundHandlerAdapter {
+
+    private final AdmissionController admissionController;
+
+    public AdmissionControlHandler() {
+        this(SingletonFactory.getInstance(AdmissionController.class));
+    }
+
+    public AdmissionControlHandler(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof RpcMessage && ((RpcMessage) msg).getData() instanceof RpcRequest) {
+            RpcMessage request = (RpcMessage) msg;
+            String rpcServiceName = ((RpcRequest) request.getData()).toRpcServiceName();
+            if (!admissionController.tryAcquire(rpcServiceName)) {
+                log.warn("server overloaded, reject request of [{}], pending: [{}]", rpcServiceName, admissionController.pending());
+                RpcMessage response = RpcMessage.builder()
+                        .requestId(request.getRequestId())
+                        .messageType(RpcConstants.RESPONSE_TYPE)
+                        .codec(SerializationTypeEnum.PROTOSTUFF.getCode())
+                        .compress(CompressTypeEnum.NONE.getCode())
+                        .data(RpcResponse.fail(RpcResponseCodeEnum.OVERLOADED)).build();
+                ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+                return;
+            }
+            request.setAdmittedService(rpcServiceName);
+        }
+        ctx.fireChannelRead(msg);
+    }
+}
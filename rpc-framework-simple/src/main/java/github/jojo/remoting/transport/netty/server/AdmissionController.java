@@ -0,0 +1,138 @@
+package github.jojo.remoting.transport.netty.server;
+
+import github.jojo.enums.RpcConfigEnum;
+import github.jojo.utils.RpcConfigUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/5 20:30
+ * @description -----------服务端准入控制 限制排队中和处理中的请求数量----------
+ * 请求在IO线程中解码后先申请名额 申请不到直接返回OVERLOADED 不进入业务线程池的队列
+ * 请求的响应写出(或者请求因为过期被丢弃)后释放名额
+ * 全局上限保护整个进程 每个服务的上限避免一个慢服务占满全部名额
+ */
+@Slf4j
+public class AdmissionController {
+
+    private static final int DEFAULT_MAX_PENDING = 10_000;
+    /**
+     * 服务名来自客户端 只为有限数量的服务名分别计数 防止计数表无限增长
+     */
+    private static final int MAX_TRACKED_SERVICES = 4096;
+
+    private final int maxPending;
+    private final int maxPendingPerService;
+    private final Map<String, Integer> serviceLimits;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Map<String, AtomicInteger> servicePending = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+
+    public AdmissionController() {
+        this(RpcConfigUtils.getInt(RpcConfigEnum.SERVER_MAX_PENDING_REQUESTS, DEFAULT_MAX_PENDING),
+                RpcConfigUtils.getInt(RpcConfigEnum.SERVER_MAX_PENDING_REQUESTS_PER_SERVICE, 0),
+                parseLimits(RpcConfigUtils.getString(RpcConfigEnum.SERVER_SERVICE_PENDING_LIMITS, null)));
+    }
+
+    /**
+     * @param maxPending           排队中和处理中的请求总数上限 小于等于0表示不限制
+     * @param maxPendingPerService 每个服务的默认上限 小于等于0表示不限制
+     * @param serviceLimits        rpc service name -> 单独指定的上限
+     */
+    public AdmissionController(int maxPending, int maxPendingPerService, Map<String, Integer> serviceLimits) {
+        this.maxPending = maxPending;
+        this.maxPendingPerService = maxPendingPerService;
+        this.serviceLimits = serviceLimits;
+    }
+
+    /**
+     * 申请一个名额 成功后必须调用{@link #release(String)}
+     *
+     * @param rpcServiceName interface name + group + version
+     * @return 是否允许处理该请求
+     */
+    public boolean tryAcquire(String rpcServiceName) {
+        if (pending.incrementAndGet() > maxPending && maxPending > 0) {
+            pending.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        AtomicInteger counter = serviceCounter(rpcServiceName);
+        if (counter != null) {
+            int limit = serviceLimits.getOrDefault(rpcServiceName, maxPendingPerService);
+            if (counter.incrementAndGet() > limit && limit > 0) {
+                counter.decrementAndGet();
+                pending.decrementAndGet();
+                rejected.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void release(String rpcServiceName) {
+        AtomicInteger counter = servicePending.get(rpcServiceName);
+        if (counter != null) {
+            counter.decrementAndGet();
+        }
+        pending.decrementAndGet();
+    }
+
+    /**
+     * @return 排队中和处理中的请求数
+     */
+    public int pending() {
+        return pending.get();
+    }
+
+    public int pending(String rpcServiceName) {
+        AtomicInteger counter = servicePending.get(rpcServiceName);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * @return 累计被拒绝的请求数
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    private AtomicInteger serviceCounter(String rpcServiceName) {
+        AtomicInteger counter = servicePending.get(rpcServiceName);
+        if (counter == null && servicePending.size() < MAX_TRACKED_SERVICES) {
+            counter = servicePending.computeIfAbsent(rpcServiceName, k -> new AtomicInteger());
+        }
+        return counter;
+    }
+
+    /**
+     * 格式: rpc service name:上限,rpc service name:上限
+     */
+    static Map<String, Integer> parseLimits(String config) {
+        if (config == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Integer> limits = new HashMap<>();
+        for (String entry : config.split(",")) {
+            int index = entry.lastIndexOf(':');
+            if (index <= 0) {
+                log.error("illegal service pending limit: [{}]", entry);
+                continue;
+            }
+            try {
+                limits.put(entry.substring(0, index).trim(), Integer.parseInt(entry.substring(index + 1).trim()));
+            } catch (NumberFormatException e) {
+                log.error("illegal service pending limit: [{}]", entry);
+            }
+        }
+        return limits;
+    }
+}
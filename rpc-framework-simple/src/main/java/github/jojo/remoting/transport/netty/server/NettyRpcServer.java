@@ -2,28 +2,27 @@ package github.jojo.remoting.transport.netty.server;
 
 import github.jojo.config.CustomShutdownHook;
 import github.jojo.entity.RpcServiceProperties;
+import github.jojo.enums.RpcConfigEnum;
 import github.jojo.factory.SingletonFactory;
 import github.jojo.provider.ServiceProvider;
 import github.jojo.provider.ServiceProviderImpl;
-import github.jojo.remoting.transport.netty.codec.RpcMessageDecoder;
-import github.jojo.remoting.transport.netty.codec.RpcMessageEncoder;
+import github.jojo.remoting.transport.netty.NettyTransport;
+import github.jojo.utils.RpcConfigUtils;
 import github.jojo.utils.RuntimeUtil;
 import github.jojo.utils.concurrent.threadpool.ThreadPoolFactoryUtils;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
-import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.net.InetAddress;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * @author zzj
@@ -36,8 +35,14 @@ import java.util.concurrent.TimeUnit;
 public class NettyRpcServer {
 
     public static final int PORT = 9995;
+    private static final String VIRTUAL_EXECUTION_MODE = "virtual";
 
     private final ServiceProvider serviceProvider = SingletonFactory.getInstance(ServiceProviderImpl.class);
+    /**
+     * 传输层 Linux上默认使用epoll
+     */
+    @Getter
+    private final NettyTransport transport = SingletonFactory.getInstance(NettyTransport.class);
 
 
     public void registerService(Object service, RpcServiceProperties rpcServiceProperties) {
@@ -50,19 +55,34 @@ public class NettyRpcServer {
         CustomShutdownHook.getCustomShutdownHook().clearAll();
         //获得IP
         String host = InetAddress.getLocalHost().getHostAddress();
-        //采用一主多从的模式 boss只有一个线程处理accept连接事件 再分发给worker线程
-        EventLoopGroup bossGroup = new NioEventLoopGroup(1);
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
-        //根据主机cpu核数创建自定义的线程池用于worker线程中 线程数量为cpu核数乘2
-        DefaultEventExecutorGroup serviceHandlerGroup = new DefaultEventExecutorGroup(
-                RuntimeUtil.cpus() * 2,
-                ThreadPoolFactoryUtils.createThreadFactory("service-handler-group", false)
-        );
+        //采用一主多从的模式 boss处理accept连接事件 再分发给worker线程
+        //默认只有一个监听socket和一个boss线程 epoll下可以通过SO_REUSEPORT绑定多个监听socket 每个socket一个boss线程
+        int acceptors = transport.acceptors(RpcConfigUtils.getInt(RpcConfigEnum.SERVER_ACCEPTORS, 1));
+        EventLoopGroup bossGroup = transport.newEventLoopGroup(acceptors);
+        EventLoopGroup workerGroup = transport.newEventLoopGroup(0);
+        //公共业务线程池: virtual模式下每个请求一个虚拟线程 适合IO密集的服务 并发数由准入控制限制
+        //否则根据主机cpu核数创建自定义的线程池 线程数量为cpu核数乘2
+        ExecutorService serviceExecutor = null;
+        DefaultEventExecutorGroup serviceHandlerGroup = null;
+        if (VIRTUAL_EXECUTION_MODE.equalsIgnoreCase(RpcConfigUtils.getString(RpcConfigEnum.SERVER_EXECUTION_MODE, "pool"))) {
+            serviceExecutor = ThreadPoolFactoryUtils.createVirtualThreadPerTaskExecutorIfAbsent("service-handler-virtual");
+            if (serviceExecutor == null) {
+                log.warn("virtual execution mode is not available, fall back to pool");
+            }
+        }
+        if (serviceExecutor == null) {
+            serviceHandlerGroup = new DefaultEventExecutorGroup(
+                    RuntimeUtil.cpus() * 2,
+                    ThreadPoolFactoryUtils.createThreadFactory("service-handler-group", false)
+            );
+            serviceExecutor = serviceHandlerGroup;
+        }
+        log.info("service handler executor: [{}]", serviceExecutor);
         try {
             ServerBootstrap b = new ServerBootstrap();
             b.group(bossGroup, workerGroup)
-                    //通过channel方法引导类ServerBootStrap指定IO模型为NIO
-                    .channel(NioServerSocketChannel.class)
+                    //通过channel方法引导类ServerBootStrap指定IO模型 epoll或者NIO
+                    .channel(transport.serverChannelClass())
                     // TCP默认开启了 Nagle 算法，该算法的作用是尽可能的发送大数据快，减少网络传输。TCP_NODELAY 参数的作用就是控制是否启用 Nagle 算法。
                     .childOption(ChannelOption.TCP_NODELAY, true)
                     // 是否开启 TCP 底层心跳机制
@@ -71,29 +91,26 @@ public class NettyRpcServer {
                     .option(ChannelOption.SO_BACKLOG, 128)
                     .handler(new LoggingHandler(LogLevel.INFO))
                     // 当客户端第一次进行请求的时候才会进行初始化 为该channel分配专属执行链（ChannelPipeline）
-                    .childHandler(new ChannelInitializer<SocketChannel>() {
-                        @Override
-                        protected void initChannel(SocketChannel ch) throws Exception {
-                            ChannelPipeline p = ch.pipeline();
-                            // 30 秒之内没有收到客户端请求的话就关闭连接
-                            p.addLast(new IdleStateHandler(30, 0, 0, TimeUnit.SECONDS));
-                            p.addLast(new RpcMessageEncoder());
-                            p.addLast(new RpcMessageDecoder());
-                            //【自定义线程池】handler使用我们自定义的线程池 编码解码心跳包都走的IO线程
-                            p.addLast(serviceHandlerGroup, new NettyRpcServerHandler());
-                        }
-                    });
+                    .childHandler(new NettyRpcServerInitializer(serviceExecutor));
+            transport.configure(b);
             //绑定端口 同步等待绑定成功
-            ChannelFuture f = b.bind(host, PORT).sync();
+            List<Channel> serverChannels = transport.bind(b, host, PORT, acceptors);
+            log.info("server started on [{}:{}], transport: [{}], acceptors: [{}]", host, PORT, transport, serverChannels.size());
             //阻塞 等待服务端监听serverSocket端口关闭事件
-            f.channel().closeFuture().sync();
+            for (Channel serverChannel : serverChannels) {
+                serverChannel.closeFuture().sync();
+            }
         } catch (InterruptedException e) {
             log.error("occur exception when start server:", e);
         } finally {
             log.error("shutdown bossGroup and workerGroup");
             bossGroup.shutdownGracefully();
             workerGroup.shutdownGracefully();
-            serviceHandlerGroup.shutdownGracefully();
+            if (serviceHandlerGroup != null) {
+                serviceHandlerGroup.shutdownGracefully();
+            } else {
+                serviceExecutor.shutdown();
+            }
         }
     }
 
@@ -1,9 +1,12 @@
 package github.jojo.remoting.transport.netty.server;
 
-import github.jojo.enums.CompressTypeEnum;
+import github.jojo.compress.CompressionPolicy;
+import github.jojo.enums.RejectPolicyEnum;
 import github.jojo.enums.RpcResponseCodeEnum;
 import github.jojo.enums.SerializationTypeEnum;
 import github.jojo.factory.SingletonFactory;
+import github.jojo.provider.MethodInvoker;
+import github.jojo.proxy.RpcDeadline;
 import github.jojo.remoting.constants.RpcConstants;
 import github.jojo.remoting.dto.RpcMessage;
 import github.jojo.remoting.dto.RpcRequest;
@@ -18,6 +21,12 @@ import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * @author zzj
  * @version 1.0
@@ -30,10 +39,28 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class NettyRpcServerHandler extends ChannelInboundHandlerAdapter {
 
+    /**
+     * 在截止时间之后才轮到处理而被丢弃的请求数
+     */
+    private static final LongAdder EXPIRED_REQUESTS = new LongAdder();
+
     private final RpcRequestHandler rpcRequestHandler;
+    private final CompressionPolicy compressionPolicy;
+    private final AdmissionController admissionController;
+    private final Executor sharedExecutor;
 
     public NettyRpcServerHandler() {
+        this(null);
+    }
+
+    /**
+     * @param sharedExecutor 公共的业务线程池(平台线程池或者虚拟线程) 没有独立线程池的服务在其中执行 为null时在当前线程执行
+     */
+    public NettyRpcServerHandler(Executor sharedExecutor) {
         this.rpcRequestHandler = SingletonFactory.getInstance(RpcRequestHandler.class);
+        this.compressionPolicy = SingletonFactory.getInstance(CompressionPolicy.class);
+        this.admissionController = SingletonFactory.getInstance(AdmissionController.class);
+        this.sharedExecutor = sharedExecutor;
     }
 
     @Override
@@ -44,29 +71,24 @@ public class NettyRpcServerHandler extends ChannelInboundHandlerAdapter {
                 byte messageType = ((RpcMessage) msg).getMessageType();
                 //发送回客户端的RpcMessage
                 RpcMessage rpcMessage = new RpcMessage();
+                //响应帧头中的requestId与请求相同 客户端据此找到对应的请求
+                rpcMessage.setRequestId(((RpcMessage) msg).getRequestId());
                 rpcMessage.setCodec(SerializationTypeEnum.PROTOSTUFF.getCode());
-                rpcMessage.setCompress(CompressTypeEnum.GZIP.getCode());
+                rpcMessage.setCompress(compressionPolicy.defaultCompressType());
                 if (messageType == RpcConstants.HEARTBEAT_REQUEST_TYPE) {
                     //如果是心跳包request
                     rpcMessage.setMessageType(RpcConstants.HEARTBEAT_RESPONSE_TYPE);
                     rpcMessage.setData(RpcConstants.PONG);
+                    //启用一个监听器 用于监听write事件是否成功 失败则调用回调函数 关闭当前channel
+                    ctx.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
                 } else {
                     RpcRequest rpcRequest = (RpcRequest) ((RpcMessage) msg).getData();
-                    //执行请求request中需要调用的服务器上的service 并且获取执行结果 返回给客户端
-                    Object result = rpcRequestHandler.handle(rpcRequest);
-                    log.info(String.format("server get result: %s", result.toString()));
                     rpcMessage.setMessageType(RpcConstants.RESPONSE_TYPE);
-                    if (ctx.channel().isActive() && ctx.channel().isWritable()) {
-                        RpcResponse<Object> rpcResponse = RpcResponse.success(result, rpcRequest.getRequestId());
-                        rpcMessage.setData(rpcResponse);
-                    } else {
-                        RpcResponse<Object> rpcResponse = RpcResponse.fail(RpcResponseCodeEnum.FAIL);
-                        rpcMessage.setData(rpcResponse);
-                        log.error("not writable now, message dropped");
-                    }
+                    rpcMessage.setMethodKey(rpcRequest.toMethodKey());
+                    //准入控制占用的名额随响应一起释放
+                    rpcMessage.setAdmittedService(((RpcMessage) msg).getAdmittedService());
+                    dispatch(ctx, (RpcMessage) msg, rpcRequest, rpcMessage);
                 }
-                //启用一个监听器 用于监听write事件是否成功 失败则调用回调函数 关闭当前channel
-                ctx.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
             }
         } finally {
             //Ensure that ByteBuf is released, otherwise there may be memory leaks
@@ -74,6 +96,112 @@ public class NettyRpcServerHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    /**
+     * 解码之后根据请求的服务/方法选择线程池: 独立线程池 > 公共业务线程池 > 当前线程
+     * 独立线程池满了之后按照配置直接返回OVERLOADED 或者交给公共业务线程池
+     */
+    private void dispatch(ChannelHandlerContext ctx, RpcMessage request, RpcRequest rpcRequest, RpcMessage rpcMessage) {
+        MethodInvoker invoker;
+        try {
+            invoker = rpcRequestHandler.resolve(rpcRequest);
+        } catch (RuntimeException e) {
+            log.error("service invocation failed: [{}]", rpcMessage.getMethodKey(), e);
+            writeResponse(ctx, rpcMessage, RpcResponse.fail(RpcResponseCodeEnum.FAIL));
+            return;
+        }
+        Executor executor = invoker.getExecutor() != null ? invoker.getExecutor() : sharedExecutor;
+        if (executor == null) {
+            process(ctx, request, rpcRequest, rpcMessage, invoker);
+            return;
+        }
+        try {
+            executor.execute(() -> process(ctx, request, rpcRequest, rpcMessage, invoker));
+        } catch (RejectedExecutionException e) {
+            if (executor != sharedExecutor && sharedExecutor != null
+                    && invoker.getRejectPolicy() == RejectPolicyEnum.FALLBACK_TO_SHARED) {
+                try {
+                    sharedExecutor.execute(() -> process(ctx, request, rpcRequest, rpcMessage, invoker));
+                    return;
+                } catch (RejectedExecutionException fallbackRejected) {
+                    //公共业务线程池也拒绝 按过载处理 释放准入名额
+                    log.warn("shared executor rejected fallback of [{}]", rpcMessage.getMethodKey());
+                }
+            }
+            log.warn("executor of [{}] is full, reject request", rpcMessage.getMethodKey());
+            writeResponse(ctx, rpcMessage, RpcResponse.fail(RpcResponseCodeEnum.OVERLOADED));
+        }
+    }
+
+    /**
+     * 在选定的线程池中执行服务方法 并写回响应
+     */
+    private void process(ChannelHandlerContext ctx, RpcMessage request, RpcRequest rpcRequest, RpcMessage rpcMessage,
+                         MethodInvoker invoker) {
+        //截止时间 = 解码时间 + 帧头中的剩余时间 在线程池中排队期间已经过期的请求客户端不会再等待 直接丢弃
+        int timeout = request.getTimeout();
+        long deadlineNanos = request.getReceiveNanos() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        if (timeout > 0 && System.nanoTime() - deadlineNanos >= 0) {
+            EXPIRED_REQUESTS.increment();
+            log.warn("request expired before dispatch, dropped: [{}]", rpcMessage.getMethodKey());
+            releaseAdmission(rpcMessage);
+            return;
+        }
+        //执行请求request中需要调用的服务器上的service 并且获取执行结果 返回给客户端
+        //服务实现中的嵌套调用继承本次请求剩余的时间
+        Object result;
+        try {
+            result = timeout > 0
+                    ? RpcDeadline.within(deadlineNanos, () -> rpcRequestHandler.handle(rpcRequest, invoker))
+                    : rpcRequestHandler.handle(rpcRequest, invoker);
+        } catch (RuntimeException e) {
+            log.error("service invocation failed: [{}]", rpcMessage.getMethodKey(), e);
+            writeResponse(ctx, rpcMessage, RpcResponse.fail(RpcResponseCodeEnum.FAIL));
+            return;
+        }
+        if (result instanceof CompletableFuture) {
+            //异步的服务实现: 不占用当前线程等待结果 future完成时再写回响应
+            ((CompletableFuture<?>) result).whenComplete((value, throwable) -> {
+                if (throwable != null) {
+                    log.error("async service invocation failed: [{}]", rpcMessage.getMethodKey(), throwable);
+                    writeResponse(ctx, rpcMessage, RpcResponse.fail(RpcResponseCodeEnum.FAIL));
+                } else {
+                    writeResponse(ctx, rpcMessage, RpcResponse.<Object>success(value));
+                }
+            });
+        } else {
+            writeResponse(ctx, rpcMessage, RpcResponse.success(result));
+        }
+    }
+
+    /**
+     * @return 因为过期而被丢弃的请求数
+     */
+    public static long expiredRequests() {
+        return EXPIRED_REQUESTS.sum();
+    }
+
+    /**
+     * 写回响应 可能在异步服务的回调线程中调用
+     */
+    private void writeResponse(ChannelHandlerContext ctx, RpcMessage rpcMessage, RpcResponse<Object> rpcResponse) {
+        releaseAdmission(rpcMessage);
+        log.info("server get result: [{}]", rpcResponse.getData());
+        if (ctx.channel().isActive() && ctx.channel().isWritable()) {
+            rpcMessage.setData(rpcResponse);
+        } else {
+            rpcMessage.setData(RpcResponse.fail(RpcResponseCodeEnum.FAIL));
+            log.error("not writable now, message dropped");
+        }
+        //启用一个监听器 用于监听write事件是否成功 失败则调用回调函数 关闭当前channel
+        ctx.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+    }
+
+    private void releaseAdmission(RpcMessage rpcMessage) {
+        if (rpcMessage.getAdmittedService() != null) {
+            admissionController.release(rpcMessage.getAdmittedService());
+        }
+    }
+
     /**
      * 30s若还没有read事件（也就是客户端还未发送数据过来）则当前channel关闭
      *
@@ -0,0 +1,68 @@
+package github.jojo.remoting.transport.netty.server;
+
+import github.jojo.enums.RpcConfigEnum;
+import github.jojo.remoting.constants.RpcConstants;
+import github.jojo.remoting.transport.netty.codec.RpcBatchSplitter;
+import github.jojo.remoting.transport.netty.codec.RpcMessageDecoder;
+import github.jojo.remoting.transport.netty.codec.RpcMessageEncoder;
+import github.jojo.utils.RpcConfigUtils;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/9 21:10
+ * @description -----------服务端每个连接的pipeline----------
+ * 当客户端第一次进行请求的时候才会进行初始化 为该channel分配专属执行链（ChannelPipeline）
+ * 所有连接共用一个实例 无状态的handler也在所有连接之间共用
+ */
+@ChannelHandler.Sharable
+public class NettyRpcServerInitializer extends ChannelInitializer<Channel> {
+
+    private final Executor sharedExecutor;
+    /**
+     * 准入控制在IO线程中执行 所有连接共用一个实例
+     */
+    private final AdmissionControlHandler admissionControlHandler = new AdmissionControlHandler();
+    private final RpcBatchSplitter batchSplitter = new RpcBatchSplitter();
+    /**
+     * 连续写出该数量的消息后强制flush 小于等于0表示不合并flush
+     */
+    private final int explicitFlushAfterFlushes;
+
+    /**
+     * @param sharedExecutor 公共的业务线程池 为null时在IO线程中执行
+     */
+    public NettyRpcServerInitializer(Executor sharedExecutor) {
+        this.sharedExecutor = sharedExecutor;
+        this.explicitFlushAfterFlushes = RpcConfigUtils.getInt(RpcConfigEnum.FLUSH_CONSOLIDATION, RpcConstants.EXPLICIT_FLUSH_AFTER_FLUSHES);
+    }
+
+    @Override
+    protected void initChannel(Channel ch) {
+        ChannelPipeline p = ch.pipeline();
+        //合并flush 放在最靠近head的位置 响应/请求较多时多条消息一次系统调用写出 流量小时不增加延迟
+        if (explicitFlushAfterFlushes > 0) {
+            p.addLast(new FlushConsolidationHandler(explicitFlushAfterFlushes, true));
+        }
+        // 30 秒之内没有收到客户端请求的话就关闭连接
+        p.addLast(new IdleStateHandler(30, 0, 0, TimeUnit.SECONDS));
+        p.addLast(new RpcMessageEncoder());
+        p.addLast(new RpcMessageDecoder());
+        //批量帧还原为单个请求 每个请求单独准入、分发和响应
+        p.addLast(batchSplitter);
+        //超过积压上限的请求直接拒绝 不进入业务线程池的队列
+        p.addLast(admissionControlHandler);
+        //【自定义线程池】handler在IO线程中解码后分发请求 服务/方法有独立线程池时在其中执行
+        //否则交给自定义的公共业务线程池 编码解码心跳包都走的IO线程
+        p.addLast(new NettyRpcServerHandler(sharedExecutor));
+    }
+}
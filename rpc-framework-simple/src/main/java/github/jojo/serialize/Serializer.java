@@ -1,6 +1,7 @@
 package github.jojo.serialize;
 
 import github.jojo.extension.SPI;
+import io.netty.buffer.ByteBuf;
 
 /**
  * @author zzj
@@ -19,6 +20,17 @@ public interface Serializer {
      */
     byte[] serialize(Object obj);
 
+    /**
+     * 序列化 直接写入目标ByteBuf（通常是编码器分配的池化ByteBuf）避免产生中间的byte[]
+     * 默认实现退化为先序列化为字节数组再写入 具体实现可以覆写以直接输出到ByteBuf
+     *
+     * @param obj 要序列化的对象
+     * @param out 目标ByteBuf 序列化结果从writerIndex处开始写入
+     */
+    default void serialize(Object obj, ByteBuf out) {
+        out.writeBytes(serialize(obj));
+    }
+
     /**
      * 反序列化
      *
@@ -30,4 +42,19 @@ public interface Serializer {
      */
     <T> T deserialize(byte[] bytes, Class<T> clazz);
 
+    /**
+     * 反序列化 直接从ByteBuf（通常是解码器中帧的切片）读取 避免拷贝到堆上的byte[]
+     * 默认实现退化为先拷贝为字节数组再反序列化
+     *
+     * @param in    序列化后的数据 读取所有可读字节
+     * @param clazz 目标类
+     * @param <T>   类的类型
+     * @return 反序列化的对象
+     */
+    default <T> T deserialize(ByteBuf in, Class<T> clazz) {
+        byte[] bytes = new byte[in.readableBytes()];
+        in.readBytes(bytes);
+        return deserialize(bytes, clazz);
+    }
+
 }
@@ -0,0 +1,53 @@
+package github.jojo.serialize.kyro;
+
+import com.esotericsoftware.kryo.Kryo;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/2/23 20:40
+ * @description -----------有界的无锁kryo对象池---------
+ * kryo不是线程安全的 但创建kryo并注册类的开销很大 因此在IO线程与业务线程之间复用kryo实例
+ * 借出时从队列中poll 没有空闲实例则新建；归还时如果池中实例已达上限则直接丢弃（交给GC）
+ */
+public class BoundedKryoPool {
+
+    private final Queue<Kryo> queue = new ConcurrentLinkedQueue<>();
+    /**
+     * ConcurrentLinkedQueue的size()需要遍历 这里单独用CAS计数
+     */
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maxSize;
+    private final Supplier<Kryo> factory;
+
+    public BoundedKryoPool(int maxSize, Supplier<Kryo> factory) {
+        this.maxSize = maxSize;
+        this.factory = factory;
+    }
+
+    public Kryo borrow() {
+        Kryo kryo = queue.poll();
+        if (kryo == null) {
+            return factory.get();
+        }
+        size.decrementAndGet();
+        return kryo;
+    }
+
+    public void release(Kryo kryo) {
+        if (size.incrementAndGet() <= maxSize) {
+            queue.offer(kryo);
+        } else {
+            size.decrementAndGet();
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+}
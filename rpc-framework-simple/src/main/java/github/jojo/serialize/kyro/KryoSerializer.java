@@ -3,13 +3,26 @@ package github.jojo.serialize.kyro;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import github.jojo.enums.RpcConfigEnum;
 import github.jojo.exception.SerializeException;
+import github.jojo.remoting.dto.RpcBatch;
 import github.jojo.remoting.dto.RpcRequest;
 import github.jojo.remoting.dto.RpcResponse;
 import github.jojo.serialize.Serializer;
+import github.jojo.utils.RpcConfigUtils;
+import github.jojo.utils.RuntimeUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import lombok.extern.slf4j.Slf4j;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * @author zzj
@@ -17,57 +30,176 @@ import java.io.ByteArrayOutputStream;
  * @date 2021/1/22 14:50
  * @description -----------kryo 效率高 但只支持java语言的序列化----------
  */
+@Slf4j
 public class KryoSerializer implements Serializer {
 
     /**
-     * kryo不是线程安全的 因此每一个线程应该拥有一个kryo实例
-     * ---------------ThreadLocal的get()方法-------------
-     * Creates a thread local variable. The initial value of the variable is
-     * determined by invoking the {@code get} method on the {@code Supplier}.
+     * Output写缓冲大小 4KB
      */
-    private final ThreadLocal<Kryo> kryoThreadLocal = ThreadLocal.withInitial(() -> {
+    private static final int BUFFER_SIZE = 1024 * 4;
+    /**
+     * 用户在rpc.properties中注册的类id从此值开始 之前的id留给框架内置的类
+     */
+    private static final int USER_REGISTRATION_MIN_ID = 100;
+    /**
+     * 框架内置的注册表 class->id 客户端与服务端必须完全一致 只能在末尾追加 不能修改已有的id
+     * （kryo默认已经占用了0~9给基本类型与String）
+     */
+    private static final Map<Class<?>, Integer> BUILT_IN_REGISTRATION;
+
+    static {
+        Map<Class<?>, Integer> registration = new LinkedHashMap<>();
+        registration.put(RpcRequest.class, 20);
+        registration.put(RpcResponse.class, 21);
+        registration.put(Object[].class, 22);
+        registration.put(Class.class, 23);
+        registration.put(Class[].class, 24);
+        registration.put(ArrayList.class, 25);
+        registration.put(HashMap.class, 26);
+        registration.put(LinkedHashMap.class, 27);
+        registration.put(RpcBatch.class, 28);
+        registration.put(int[].class, 29);
+        BUILT_IN_REGISTRATION = Collections.unmodifiableMap(registration);
+    }
+
+    /**
+     * kryo不是线程安全的 之前每个线程通过ThreadLocal持有kryo 但每次调用后都要remove（线程池复用线程）
+     * 导致每一次序列化都要重新创建kryo并注册类。这里改为有界对象池 在所有线程之间复用kryo实例
+     */
+    private final BoundedKryoPool kryoPool;
+    /**
+     * 序列化时的类注册表：内置注册表 + rpc.properties中配置的注册表
+     */
+    private final Map<Class<?>, Integer> registration;
+    private final boolean registrationRequired;
+
+    /**
+     * Kryo的Output带有自己的写缓冲 这里每个线程复用同一个Output 只替换其底层的OutputStream
+     */
+    private final ThreadLocal<Output> outputThreadLocal = ThreadLocal.withInitial(() -> new Output(BUFFER_SIZE));
+    private final ThreadLocal<Input> inputThreadLocal = ThreadLocal.withInitial(() -> new Input(BUFFER_SIZE));
+
+    public KryoSerializer() {
+        this.registration = loadRegistration();
+        this.registrationRequired = RpcConfigUtils.getBoolean(RpcConfigEnum.KRYO_REGISTRATION_REQUIRED, false);
+        int poolSize = RpcConfigUtils.getInt(RpcConfigEnum.KRYO_POOL_SIZE, RuntimeUtil.cpus() * 4);
+        this.kryoPool = new BoundedKryoPool(poolSize, this::createKryo);
+    }
+
+    private Kryo createKryo() {
         Kryo kryo = new Kryo();
         //当kryo写一个对象的实例的时候，默认需要将类的完全限定名称写入。
         // 将类名一同写入序列化数据中是比较低效的，所以kryo支持通过类注册进行优化。
-        kryo.register(RpcResponse.class);
-        kryo.register(RpcRequest.class);
+        //这里使用固定的id注册 保证不同进程中同一个类的id相同
+        registration.forEach(kryo::register);
         //默认值为true,是否关闭注册行为,关闭之后可能存在序列化问题，一般推荐设置为 true
         kryo.setReferences(true);
-        //默认值为false,是否关闭循环引用，可以提高性能，但是一般不推荐设置为 true
-        kryo.setRegistrationRequired(false);
+        //开启后未注册的类无法序列化 但类名也就不会写入数据中了 需要保证所有传输的类都已注册
+        kryo.setRegistrationRequired(registrationRequired);
         return kryo;
-    });
+    }
+
+    /**
+     * 解析rpc.properties中的注册表 格式: github.jojo.Hello:100,java.util.Date:101
+     */
+    private static Map<Class<?>, Integer> loadRegistration() {
+        Map<Class<?>, Integer> result = new LinkedHashMap<>(BUILT_IN_REGISTRATION);
+        String config = RpcConfigUtils.getString(RpcConfigEnum.KRYO_REGISTRATION, null);
+        if (config == null) {
+            return result;
+        }
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        for (String entry : config.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int index = entry.lastIndexOf(':');
+            if (index <= 0) {
+                throw new SerializeException("kryo注册表格式错误: " + entry);
+            }
+            String className = entry.substring(0, index).trim();
+            int id = Integer.parseInt(entry.substring(index + 1).trim());
+            if (id < USER_REGISTRATION_MIN_ID) {
+                throw new SerializeException("kryo注册id必须大于等于" + USER_REGISTRATION_MIN_ID + ": " + entry);
+            }
+            if (result.containsValue(id)) {
+                throw new SerializeException("kryo注册id重复: " + entry);
+            }
+            try {
+                result.put(Class.forName(className, false, classLoader), id);
+            } catch (ClassNotFoundException e) {
+                throw new SerializeException("kryo注册的类不存在: " + className);
+            }
+        }
+        log.info("kryo registration: [{}]", result);
+        return result;
+    }
 
     @Override
     public byte[] serialize(Object obj) {
         //括号里的内容支持包括流以及任何可关闭的资源(继承AutoCloseable接口)，
         // 数据流会在 try 执行完毕后自动被关闭，而不用我们手动关闭了
+        Kryo kryo = kryoPool.borrow();
         try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
              Output output = new Output(byteArrayOutputStream)) {
-            Kryo kryo = kryoThreadLocal.get();
             //Object->byte:将对象序列化为byte数组
             kryo.writeObject(output, obj);
-            //-----------由于线程池的影响 ThreadLocal使用完之后必须remove----------
-            //--https://blog.csdn.net/luzhensmart/article/details/86765689---
-            kryoThreadLocal.remove();
             return output.toBytes();
+        } catch (Exception e) {
+            throw new SerializeException("序列化失败...", e);
+        } finally {
+            kryoPool.release(kryo);
+        }
+    }
 
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        Output output = outputThreadLocal.get();
+        Kryo kryo = kryoPool.borrow();
+        try {
+            //Output缓冲写满或flush时直接写入ByteBuf
+            output.setOutputStream(new ByteBufOutputStream(out));
+            kryo.writeObject(output, obj);
+            output.flush();
         } catch (Exception e) {
-            throw new SerializeException("序列化失败...");
+            throw new SerializeException("序列化失败...", e);
+        } finally {
+            //不能调用close() close会关闭底层的流 这里只解除引用
+            output.setOutputStream(null);
+            kryoPool.release(kryo);
         }
     }
 
     @Override
     public <T> T deserialize(byte[] bytes, Class<T> clazz) {
+        Kryo kryo = kryoPool.borrow();
         try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
              Input input = new Input(byteArrayInputStream)) {
-            Kryo kryo = kryoThreadLocal.get();
             //byte->object:将byte数组反序列为Object
             Object o = kryo.readObject(input, clazz);
-            kryoThreadLocal.remove();
             return clazz.cast(o);
         } catch (Exception e) {
-            throw new SerializeException("反序列化失败...");
+            throw new SerializeException("反序列化失败...", e);
+        } finally {
+            kryoPool.release(kryo);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(ByteBuf in, Class<T> clazz) {
+        Input input = inputThreadLocal.get();
+        Kryo kryo = kryoPool.borrow();
+        try {
+            //Input从帧的切片中按需读取 不需要先拷贝成byte[]
+            input.setInputStream(new ByteBufInputStream(in));
+            Object o = kryo.readObject(input, clazz);
+            return clazz.cast(o);
+        } catch (Exception e) {
+            throw new SerializeException("反序列化失败...", e);
+        } finally {
+            input.setInputStream(null);
+            kryoPool.release(kryo);
         }
     }
 }
@@ -1,11 +1,17 @@
 package github.jojo.serialize.protostuff;
 
+import github.jojo.exception.SerializeException;
 import github.jojo.serialize.Serializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import io.protostuff.LinkedBuffer;
 import io.protostuff.ProtostuffIOUtil;
 import io.protostuff.Schema;
 import io.protostuff.runtime.RuntimeSchema;
 
+import java.io.IOException;
+
 /**
  * @author zzj
  * @version 1.0
@@ -34,6 +40,25 @@ public class ProtostuffSerializer implements Serializer {
         return bytes;
     }
 
+    /**
+     * LinkedBuffer写满后直接flush到ByteBuf 不再生成中间的byte[]
+     *
+     * @param obj 要序列化的对象
+     * @param out 目标ByteBuf
+     */
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        Schema schema = RuntimeSchema.getSchema(obj.getClass());
+        LinkedBuffer buffer = bufferThreadLocal.get();
+        try {
+            ProtostuffIOUtil.writeTo(new ByteBufOutputStream(out), obj, schema, buffer);
+        } catch (IOException e) {
+            throw new SerializeException("序列化失败...");
+        } finally {
+            buffer.clear();
+        }
+    }
+
     @Override
     public <T> T deserialize(byte[] bytes, Class<T> clazz) {
         Schema<T> schema = RuntimeSchema.getSchema(clazz);
@@ -41,4 +66,27 @@ public class ProtostuffSerializer implements Serializer {
         ProtostuffIOUtil.mergeFrom(bytes, obj, schema);
         return obj;
     }
+
+    /**
+     * 直接从ByteBuf流式反序列化 LinkedBuffer作为读缓冲复用
+     *
+     * @param in    序列化后的数据
+     * @param clazz 目标类
+     * @param <T>   类的类型
+     * @return 反序列化的对象
+     */
+    @Override
+    public <T> T deserialize(ByteBuf in, Class<T> clazz) {
+        Schema<T> schema = RuntimeSchema.getSchema(clazz);
+        T obj = schema.newMessage();
+        LinkedBuffer buffer = bufferThreadLocal.get();
+        try {
+            ProtostuffIOUtil.mergeFrom(new ByteBufInputStream(in), obj, schema, buffer);
+        } catch (IOException e) {
+            throw new SerializeException("反序列化失败...");
+        } finally {
+            buffer.clear();
+        }
+        return obj;
+    }
 }
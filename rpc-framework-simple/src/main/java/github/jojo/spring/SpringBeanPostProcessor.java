@@ -70,7 +70,7 @@ public class SpringBeanPostProcessor implements BeanPostProcessor {
                 RpcServiceProperties rpcServiceProperties = RpcServiceProperties.builder()
                         .group(rpcReference.group())
                         .version(rpcReference.version()).build();
-                RpcClientProxy rpcClientProxy = new RpcClientProxy(rpcClient, rpcServiceProperties);
+                RpcClientProxy rpcClientProxy = new RpcClientProxy(rpcClient, rpcServiceProperties, rpcReference.timeout());
                 //传入的是接口类型
                 Object clientProxy = rpcClientProxy.getProxy(declaredField.getType());
                 declaredField.setAccessible(true);
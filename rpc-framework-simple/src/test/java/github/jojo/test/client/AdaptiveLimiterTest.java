@@ -0,0 +1,109 @@
+package github.jojo.test.client;
+
+import github.jojo.exception.RpcException;
+import github.jojo.remoting.transport.netty.client.AdaptiveLimiter;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/6 17:10
+ * @description -----------自适应并发限制：RTT稳定时增长 RTT上升或者请求失败时收缩 超过限制时排队或快速失败----------
+ */
+public class AdaptiveLimiterTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testGrowAndShrink() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 100, 0, 0);
+        //在途请求占满limit且RTT稳定 limit增长
+        for (int i = 0; i < 50; i++) {
+            fill(limiter);
+            drain(limiter, RTT);
+        }
+        int grown = limiter.getLimit();
+        assertTrue(grown > 10);
+        assertTrue(grown <= 100);
+        //RTT升高到长期RTT的4倍 limit收缩
+        for (int i = 0; i < 20; i++) {
+            fill(limiter);
+            drain(limiter, RTT * 4);
+        }
+        int shrunk = limiter.getLimit();
+        assertTrue(shrunk < grown);
+        //请求失败时直接乘以0.9
+        fill(limiter);
+        int inFlight = limiter.getInFlight();
+        limiter.release(RTT, true);
+        assertTrue(limiter.getLimit() < shrunk);
+        for (int i = 1; i < inFlight; i++) {
+            limiter.release(RTT, false);
+        }
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testFailFast() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 0, 0);
+        assertTrue(limiter.acquire().isDone());
+        assertRejected(limiter.acquire());
+        assertEquals(1, limiter.getRejected());
+    }
+
+    @Test
+    public void testQueue() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1, 5_000);
+        assertTrue(limiter.acquire().isDone());
+        CompletableFuture<Void> queued = limiter.acquire();
+        assertFalse(queued.isDone());
+        assertEquals(1, limiter.getQueued());
+        //队列已满
+        assertRejected(limiter.acquire());
+        //名额释放后交给排队的请求
+        limiter.release(RTT, false);
+        assertTrue(queued.isDone());
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(0, limiter.getQueued());
+
+        AdaptiveLimiter shortQueue = new AdaptiveLimiter(1, 1, 1, 20);
+        shortQueue.acquire();
+        CompletableFuture<Void> expired = shortQueue.acquire();
+        //排队超时后失败
+        assertRejected(expired);
+        assertEquals(0, shortQueue.getQueued());
+    }
+
+    private static void fill(AdaptiveLimiter limiter) {
+        while (limiter.getInFlight() < limiter.getLimit()) {
+            assertTrue(limiter.acquire().isDone());
+        }
+    }
+
+    private static void drain(AdaptiveLimiter limiter, long rtt) {
+        while (limiter.getInFlight() > 0) {
+            limiter.release(rtt, false);
+        }
+    }
+
+    private static void assertRejected(CompletableFuture<Void> future) throws InterruptedException {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RpcException);
+        } catch (TimeoutException e) {
+            fail("not rejected");
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package github.jojo.test.client;
+
+import github.jojo.factory.SingletonFactory;
+import github.jojo.remoting.transport.netty.client.ChannelProvider;
+import github.jojo.remoting.transport.netty.client.UnprocessedRequests;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/2/28 16:45
+ * @description -----------连接池（按地址查找、选择负载最低的连接、按需扩容、关闭后移除）----------
+ */
+public class ChannelProviderTest {
+
+    private final UnprocessedRequests unprocessedRequests = SingletonFactory.getInstance(UnprocessedRequests.class);
+
+    @Test
+    public void testSelectLeastPending() {
+        ChannelProvider channelProvider = new ChannelProvider();
+        //同一地址的不同InetSocketAddress实例也能找到连接
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", 9995);
+        assertNull(channelProvider.get(address));
+        EmbeddedChannel busy = new EmbeddedChannel();
+        EmbeddedChannel idle = new EmbeddedChannel();
+        channelProvider.set(address, busy);
+        channelProvider.set(new InetSocketAddress("127.0.0.1", 9995), idle);
+        for (int i = 0; i < 16; i++) {
+            unprocessedRequests.put(busy, new CompletableFuture<>(), 0);
+        }
+        for (int i = 0; i < 4; i++) {
+            assertSame(idle, channelProvider.get(new InetSocketAddress("127.0.0.1", 9995)));
+        }
+        idle.close();
+        assertSame(busy, channelProvider.get(address));
+        busy.close();
+        unprocessedRequests.failAll(busy);
+        assertNull(channelProvider.get(address));
+    }
+
+    @Test
+    public void testGrow() {
+        ChannelProvider channelProvider = new ChannelProvider();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", 9996);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channelProvider.set(address, channel);
+        assertFalse(channelProvider.tryGrow(address, channel));
+        for (int i = 0; i < 16; i++) {
+            unprocessedRequests.put(channel, new CompletableFuture<>(), 0);
+        }
+        assertTrue(channelProvider.tryGrow(address, channel));
+        //同一时间只扩容一个连接
+        assertFalse(channelProvider.tryGrow(address, channel));
+        channelProvider.growFailed(address);
+        assertTrue(channelProvider.tryGrow(address, channel));
+        channelProvider.set(address, new EmbeddedChannel());
+        unprocessedRequests.failAll(channel);
+    }
+}
@@ -0,0 +1,126 @@
+package github.jojo.test.client;
+
+import github.jojo.exception.RpcException;
+import github.jojo.remoting.transport.netty.client.NettyRpcClient;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/1 10:12
+ * @description -----------异步建立连接（并发调用方共享同一次连接、连接失败后退避）----------
+ */
+public class NettyRpcClientConnectTest {
+
+    @Test
+    public void testCoalescedConnect() throws Exception {
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch acceptedLatch = new CountDownLatch(1);
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        NettyRpcClient client = new NettyRpcClient();
+        try {
+            Channel server = new ServerBootstrap().group(group)
+                    .channel(NioServerSocketChannel.class)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            accepted.incrementAndGet();
+                            acceptedLatch.countDown();
+                            ch.pipeline().addLast(new ChannelInboundHandlerAdapter());
+                        }
+                    }).bind(0).sync().channel();
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1",
+                    ((InetSocketAddress) server.localAddress()).getPort());
+            int threads = 50;
+            CountDownLatch start = new CountDownLatch(1);
+            List<CompletableFuture<Channel>> futures = new ArrayList<>();
+            List<Thread> callers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                CompletableFuture<Channel> result = new CompletableFuture<>();
+                futures.add(result);
+                Thread caller = new Thread(() -> {
+                    try {
+                        start.await();
+                        client.getChannelAsync(address).whenComplete((c, e) -> {
+                            if (e != null) {
+                                result.completeExceptionally(e);
+                            } else {
+                                result.complete(c);
+                            }
+                        });
+                    } catch (InterruptedException e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+                callers.add(caller);
+                caller.start();
+            }
+            start.countDown();
+            Channel first = futures.get(0).get(5, TimeUnit.SECONDS);
+            for (CompletableFuture<Channel> future : futures) {
+                assertSame(first, future.get(5, TimeUnit.SECONDS));
+            }
+            //客户端连接完成时服务端可能还没有执行initChannel
+            assertTrue(acceptedLatch.await(5, TimeUnit.SECONDS));
+            //所有调用方共享同一次连接
+            assertEquals(1, accepted.get());
+            first.close().sync();
+            server.close().sync();
+        } finally {
+            client.close();
+            group.shutdownGracefully();
+        }
+    }
+
+    @Test
+    public void testConnectFailureBackoff() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        NettyRpcClient client = new NettyRpcClient();
+        try {
+            assertConnectFailed(client.getChannelAsync(address), null);
+            //退避期间直接失败 不再发起连接
+            assertConnectFailed(client.getChannelAsync(address), "retry after");
+        } finally {
+            client.close();
+        }
+    }
+
+    private void assertConnectFailed(CompletableFuture<Channel> future, String message) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RpcException);
+            if (message != null) {
+                assertTrue(e.getCause().getMessage().contains(message));
+            }
+        }
+    }
+}
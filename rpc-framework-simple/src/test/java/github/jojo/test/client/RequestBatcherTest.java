@@ -0,0 +1,147 @@
+package github.jojo.test.client;
+
+import github.jojo.enums.CompressTypeEnum;
+import github.jojo.enums.SerializationTypeEnum;
+import github.jojo.remoting.constants.RpcConstants;
+import github.jojo.remoting.dto.RpcMessage;
+import github.jojo.remoting.dto.RpcRequest;
+import github.jojo.remoting.transport.netty.client.RequestBatcher;
+import github.jojo.remoting.transport.netty.codec.RpcBatchSplitter;
+import github.jojo.remoting.transport.netty.codec.RpcMessageDecoder;
+import github.jojo.remoting.transport.netty.codec.RpcMessageEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.EncoderException;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/10 21:50
+ * @description -----------请求攒批：同一连接上的多个请求编码为一个批量帧 服务端解码后还原为单个请求----------
+ */
+public class RequestBatcherTest {
+
+    @Test
+    public void testBatchFrame() {
+        EmbeddedChannel clientChannel = new EmbeddedChannel(new RpcMessageEncoder());
+        //窗口足够长 攒满3个请求时立即发送
+        RequestBatcher batcher = RequestBatcher.get(clientChannel, 3, 1_000_000);
+        AtomicInteger sent = new AtomicInteger();
+        for (int i = 1; i <= 3; i++) {
+            batcher.add(request(i, i * 100), future -> {
+                if (future.isSuccess()) {
+                    sent.incrementAndGet();
+                }
+            });
+        }
+        ByteBuf frame = clientChannel.readOutbound();
+        assertNull(clientChannel.readOutbound());
+        assertEquals(3, sent.get());
+        int batchLength = frame.readableBytes();
+        //同样的3个请求单独编码
+        int separateLength = 0;
+        for (int i = 1; i <= 3; i++) {
+            clientChannel.writeOutbound(request(i, i * 100));
+            ByteBuf single = clientChannel.readOutbound();
+            separateLength += single.readableBytes();
+            single.release();
+        }
+        assertTrue(batchLength + " >= " + separateLength, batchLength < separateLength);
+
+        EmbeddedChannel serverChannel = new EmbeddedChannel(new RpcMessageDecoder(), new RpcBatchSplitter());
+        serverChannel.writeInbound(frame);
+        for (int i = 1; i <= 3; i++) {
+            RpcMessage rpcMessage = serverChannel.readInbound();
+            assertEquals(RpcConstants.REQUEST_TYPE, rpcMessage.getMessageType());
+            assertEquals(i, rpcMessage.getRequestId());
+            assertEquals(i * 100, rpcMessage.getTimeout());
+            assertTrue(rpcMessage.getReceiveNanos() > 0);
+            assertEquals("hello", ((RpcRequest) rpcMessage.getData()).getMethodName());
+        }
+        assertNull(serverChannel.readInbound());
+    }
+
+    @Test
+    public void testWindow() throws InterruptedException {
+        EmbeddedChannel clientChannel = new EmbeddedChannel(new RpcMessageEncoder());
+        RequestBatcher batcher = RequestBatcher.get(clientChannel, 16, 50);
+        batcher.add(request(1, 0), future -> {
+        });
+        batcher.add(request(2, 0), future -> {
+        });
+        //窗口结束之前不发送
+        assertNull(clientChannel.readOutbound());
+        Thread.sleep(5);
+        clientChannel.runPendingTasks();
+        EmbeddedChannel serverChannel = new EmbeddedChannel(new RpcMessageDecoder(), new RpcBatchSplitter());
+        serverChannel.writeInbound((ByteBuf) clientChannel.readOutbound());
+        assertNull(clientChannel.readOutbound());
+        RpcMessage first = serverChannel.readInbound();
+        RpcMessage second = serverChannel.readInbound();
+        assertEquals(1, first.getRequestId());
+        assertEquals(2, second.getRequestId());
+        //没有期限的请求不记录接收时间
+        assertEquals(0, first.getReceiveNanos());
+    }
+
+    /**
+     * 批量帧超过最大帧长度时不发送超长的帧 逐个重新发送 只有本身超长的请求失败
+     */
+    @Test
+    public void testOversizedBatch() {
+        EmbeddedChannel clientChannel = new EmbeddedChannel(new RpcMessageEncoder());
+        RequestBatcher batcher = RequestBatcher.get(clientChannel, 4, 1_000_000);
+        String large = String.join("", Collections.nCopies(RpcConstants.MAX_FRAME_LENGTH / 3, "j"));
+        String tooLarge = large + large + large + large;
+        AtomicInteger sent = new AtomicInteger();
+        AtomicReference<Throwable> failed = new AtomicReference<>();
+        for (int i = 1; i <= 4; i++) {
+            batcher.add(request(i, 0, i == 4 ? tooLarge : large), future -> {
+                if (future.isSuccess()) {
+                    sent.incrementAndGet();
+                } else {
+                    failed.set(future.cause());
+                }
+            });
+        }
+        assertEquals(3, sent.get());
+        assertTrue(failed.get() instanceof EncoderException);
+        for (int i = 1; i <= 3; i++) {
+            ByteBuf frame = clientChannel.readOutbound();
+            assertTrue(frame.readableBytes() <= RpcConstants.MAX_FRAME_LENGTH);
+            assertEquals(i, frame.getInt(RpcConstants.HEAD_LENGTH - 8));
+            frame.release();
+        }
+        assertNull(clientChannel.readOutbound());
+    }
+
+    private static RpcMessage request(int requestId, int timeout) {
+        return request(requestId, timeout, "jojo");
+    }
+
+    private static RpcMessage request(int requestId, int timeout, String parameter) {
+        RpcRequest rpcRequest = RpcRequest.builder()
+                .interfaceName("github.jojo.HelloService")
+                .methodName("hello")
+                .parameters(new Object[]{parameter})
+                .paramTypes(new Class<?>[]{String.class})
+                .group("test1")
+                .version("version1").build();
+        return RpcMessage.builder()
+                .requestId(requestId)
+                .timeout(timeout)
+                .messageType(RpcConstants.REQUEST_TYPE)
+                .codec(SerializationTypeEnum.KYRO.getCode())
+                .compress(CompressTypeEnum.NONE.getCode())
+                .data(rpcRequest).build();
+    }
+}
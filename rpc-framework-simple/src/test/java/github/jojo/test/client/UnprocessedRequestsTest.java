@@ -0,0 +1,112 @@
+package github.jojo.test.client;
+
+import github.jojo.exception.RpcException;
+import github.jojo.remoting.dto.RpcResponse;
+import github.jojo.remoting.transport.netty.client.UnprocessedRequests;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/2/28 11:02
+ * @description -----------未完成请求表（响应匹配、超时、连接断开、指标）----------
+ */
+public class UnprocessedRequestsTest {
+
+    private final UnprocessedRequests unprocessedRequests = new UnprocessedRequests();
+
+    @Test
+    public void testComplete() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        CompletableFuture<RpcResponse<Object>> first = new CompletableFuture<>();
+        CompletableFuture<RpcResponse<Object>> second = new CompletableFuture<>();
+        int firstId = unprocessedRequests.put(channel, first, 0);
+        int secondId = unprocessedRequests.put(channel, second, 0);
+        assertNotEquals(firstId, secondId);
+        assertTrue(unprocessedRequests.inFlight() >= 2);
+        Thread.sleep(20);
+        assertTrue(unprocessedRequests.oldestAgeMillis() >= 20);
+
+        RpcResponse<Object> response = RpcResponse.success("jojo");
+        unprocessedRequests.complete(channel, secondId, response);
+        assertSame(response, second.get());
+        //重复或迟到的响应只打印日志
+        unprocessedRequests.complete(channel, secondId, response);
+        unprocessedRequests.complete(channel, firstId, response);
+        assertSame(response, first.get());
+        unprocessedRequests.failAll(channel);
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        CompletableFuture<RpcResponse<Object>> future = new CompletableFuture<>();
+        int requestId = unprocessedRequests.put(channel, future, 50);
+        Thread.sleep(200);
+        //超时任务回到channel的EventLoop中执行
+        channel.runPendingTasks();
+        assertException(future);
+        //超时之后到达的响应被忽略
+        unprocessedRequests.complete(channel, requestId, RpcResponse.success("late"));
+        unprocessedRequests.failAll(channel);
+    }
+
+    @Test
+    public void testFailAllOnInactive() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        int before = unprocessedRequests.inFlight();
+        CompletableFuture<RpcResponse<Object>> first = new CompletableFuture<>();
+        CompletableFuture<RpcResponse<Object>> second = new CompletableFuture<>();
+        unprocessedRequests.put(channel, first, 10_000);
+        unprocessedRequests.put(channel, second, 10_000);
+        assertEquals(before + 2, unprocessedRequests.inFlight());
+        unprocessedRequests.failAll(channel);
+        assertException(first);
+        assertException(second);
+        assertEquals(before, unprocessedRequests.inFlight());
+    }
+
+    /**
+     * 连接断开后到达的发送失败回调、响应以及已经排队的超时任务 不会重新登记请求表
+     */
+    @Test
+    public void testNoTableAfterFailAll() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        int before = unprocessedRequests.trackedChannels();
+        CompletableFuture<RpcResponse<Object>> future = new CompletableFuture<>();
+        int requestId = unprocessedRequests.put(channel, future, 50);
+        assertEquals(before + 1, unprocessedRequests.trackedChannels());
+        //等待超时任务进入EventLoop的任务队列 但先不执行
+        Thread.sleep(200);
+        unprocessedRequests.failAll(channel);
+        assertEquals(before, unprocessedRequests.trackedChannels());
+
+        assertNull(unprocessedRequests.remove(channel, requestId));
+        unprocessedRequests.complete(channel, requestId, RpcResponse.success("late"));
+        channel.runPendingTasks();
+        assertEquals(before, unprocessedRequests.trackedChannels());
+        assertEquals(0, unprocessedRequests.pending(channel));
+        assertException(future);
+    }
+
+    private void assertException(CompletableFuture<RpcResponse<Object>> future) throws InterruptedException {
+        assertTrue(future.isDone());
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RpcException);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package github.jojo.test.compress;
+
+import github.jojo.compress.CompressionPolicy;
+import github.jojo.enums.CompressTypeEnum;
+import github.jojo.enums.RpcConfigEnum;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/2/24 20:10
+ * @description -----------自适应压缩策略：小消息不压缩 压缩率差的方法不压缩 配置错误时使用默认值----------
+ */
+public class CompressionPolicyTest {
+
+    private static final String METHOD = "github.jojo.HelloService#hello";
+    private static final byte NONE = CompressTypeEnum.NONE.getCode();
+    private static final byte GZIP = CompressTypeEnum.GZIP.getCode();
+    private static final byte LZ4 = CompressTypeEnum.LZ4.getCode();
+
+    @Test
+    public void testThresholdAndRatio() {
+        CompressionPolicy policy = new CompressionPolicy();
+        assertEquals(NONE, policy.select(METHOD, GZIP, 100));
+        //还没有样本 先压缩一次
+        assertEquals(GZIP, policy.select(METHOD, GZIP, 4096));
+        policy.record(METHOD, GZIP, 4096, 4000);
+        assertEquals(NONE, policy.select(METHOD, GZIP, 4096));
+    }
+
+    @Test
+    public void testInvalidMaxRatio() {
+        System.setProperty(RpcConfigEnum.COMPRESS_MAX_RATIO.getPropertyValue(), "0,5");
+        CompressionPolicy policy;
+        try {
+            //配置写错时使用默认值0.9 而不是抛出异常
+            policy = new CompressionPolicy();
+        } finally {
+            System.clearProperty(RpcConfigEnum.COMPRESS_MAX_RATIO.getPropertyValue());
+        }
+        policy.record(METHOD, GZIP, 4096, 3000);
+        assertEquals(GZIP, policy.select(METHOD, GZIP, 4096));
+        for (int i = 0; i < 10; i++) {
+            policy.record(METHOD, GZIP, 4096, 4096);
+        }
+        assertEquals(NONE, policy.select(METHOD, GZIP, 4096));
+    }
+
+    @Test
+    public void testSelectCandidate() {
+        System.setProperty(RpcConfigEnum.COMPRESS_CANDIDATES.getPropertyValue(), "lz4,unknown");
+        CompressionPolicy policy;
+        try {
+            policy = new CompressionPolicy();
+        } finally {
+            System.clearProperty(RpcConfigEnum.COMPRESS_CANDIDATES.getPropertyValue());
+        }
+        assertEquals(GZIP, policy.select(METHOD, GZIP, 4096));
+        policy.record(METHOD, GZIP, 4096, 2048);
+        //候选还没有样本 先压缩一次
+        assertEquals(LZ4, policy.select(METHOD, GZIP, 4096));
+        policy.record(METHOD, LZ4, 4096, 1024);
+        //每个方法独立选择压缩率更低的一个
+        assertEquals(LZ4, policy.select(METHOD, GZIP, 4096));
+        assertEquals(GZIP, policy.select("github.jojo.HelloService#other", GZIP, 4096));
+        //期望的压缩类型仍然会被定期试探
+        int gzip = 0;
+        for (int i = 0; i < 128; i++) {
+            if (policy.select(METHOD, GZIP, 4096) == GZIP) {
+                gzip++;
+            }
+        }
+        assertTrue(gzip > 0 && gzip < 128);
+        //不期望压缩时不使用候选
+        assertEquals(NONE, policy.select(METHOD, NONE, 4096));
+    }
+}
@@ -0,0 +1,195 @@
+package github.jojo.test.compress;
+
+import github.jojo.compress.Compress;
+import github.jojo.compress.deflate.DeflateCompress;
+import github.jojo.compress.deflate.DictionarySampler;
+import github.jojo.compress.deflate.DictionaryTrainer;
+import github.jojo.compress.gzip.GzipCompress;
+import github.jojo.remoting.dto.RpcRequest;
+import github.jojo.serialize.kyro.KryoSerializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/2/26 17:20
+ * @description -----------预置字典deflate压缩（字典训练、小消息压缩效果、字典id校验、流量采样）----------
+ */
+public class DeflateCompressTest {
+
+    private final KryoSerializer serializer = new KryoSerializer();
+
+    @Test
+    public void testSmallMessage() {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            samples.add(request(i));
+        }
+        byte[] dictionary = DictionaryTrainer.train(samples, DictionaryTrainer.DEFAULT_MAX_SIZE);
+        assertTrue(dictionary.length > 0);
+        //训练结果是确定的 双方使用同一份样本得到同一个字典
+        assertArrayEquals(dictionary, DictionaryTrainer.train(samples, DictionaryTrainer.DEFAULT_MAX_SIZE));
+
+        Compress deflate = new DeflateCompress(dictionary);
+        byte[] body = request(1000);
+        byte[] compressed = deflate.compress(body);
+        byte[] gzipped = new GzipCompress().compress(body);
+        assertTrue(body.length < 1024);
+        assertTrue(compressed.length < body.length / 2);
+        assertTrue(compressed.length < gzipped.length);
+        assertArrayEquals(body, deflate.decompress(compressed));
+
+        //非堆内存的输入输出
+        ByteBuf in = PooledByteBufAllocator.DEFAULT.directBuffer();
+        ByteBuf out = PooledByteBufAllocator.DEFAULT.directBuffer();
+        in.writeBytes(body);
+        deflate.compress(in, out);
+        assertArrayEquals(compressed, ByteBufUtil.getBytes(out));
+        ByteBuf decompressed = deflate.decompress(out, PooledByteBufAllocator.DEFAULT);
+        assertArrayEquals(body, ByteBufUtil.getBytes(decompressed));
+        in.release();
+        out.release();
+        decompressed.release();
+    }
+
+    @Test
+    public void testWithoutDictionary() {
+        Compress deflate = new DeflateCompress(null);
+        byte[] body = request(1);
+        assertArrayEquals(body, deflate.decompress(deflate.compress(body)));
+    }
+
+    /**
+     * 只有几KB的deflate数据可以膨胀出超过上限的结果 解压到上限时直接失败
+     */
+    @Test
+    public void testDecompressionBomb() {
+        Compress deflate = new DeflateCompress(null);
+        byte[] bomb = deflate.compress(new byte[Compress.MAX_DECOMPRESSED_LENGTH + 1]);
+        assertTrue(bomb.length < 64 * 1024);
+        try {
+            deflate.decompress(bomb);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("exceeds"));
+        }
+        ByteBuf in = PooledByteBufAllocator.DEFAULT.heapBuffer();
+        in.writeBytes(bomb);
+        try {
+            deflate.decompress(in, PooledByteBufAllocator.DEFAULT);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("exceeds"));
+        } finally {
+            in.release();
+        }
+        //恰好等于上限的数据可以正常解压
+        byte[] max = new byte[Compress.MAX_DECOMPRESSED_LENGTH];
+        assertEquals(max.length, deflate.decompress(deflate.compress(max)).length);
+    }
+
+    @Test
+    public void testGzipDecompressionBomb() {
+        Compress gzip = new GzipCompress();
+        byte[] bomb = gzip.compress(new byte[Compress.MAX_DECOMPRESSED_LENGTH + 1]);
+        assertTrue(bomb.length < 64 * 1024);
+        try {
+            gzip.decompress(bomb);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("exceeds"));
+        }
+        ByteBuf in = PooledByteBufAllocator.DEFAULT.heapBuffer();
+        in.writeBytes(bomb);
+        try {
+            gzip.decompress(in, PooledByteBufAllocator.DEFAULT);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("exceeds"));
+        } finally {
+            in.release();
+        }
+        //恰好等于上限的数据可以正常解压
+        byte[] max = new byte[Compress.MAX_DECOMPRESSED_LENGTH];
+        byte[] compressed = gzip.compress(max);
+        assertEquals(max.length, gzip.decompress(compressed).length);
+        in = PooledByteBufAllocator.DEFAULT.heapBuffer();
+        in.writeBytes(compressed);
+        ByteBuf out = gzip.decompress(in, PooledByteBufAllocator.DEFAULT);
+        try {
+            assertEquals(max.length, out.readableBytes());
+        } finally {
+            out.release();
+            in.release();
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUnknownDictionary() {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            samples.add(request(i));
+        }
+        byte[] dictionary = DictionaryTrainer.train(samples, DictionaryTrainer.DEFAULT_MAX_SIZE);
+        byte[] compressed = new DeflateCompress(dictionary).compress(request(1));
+        new DeflateCompress(null).decompress(compressed);
+    }
+
+    @Test
+    public void testSampler() throws Exception {
+        Path path = Files.createTempFile("dictionary", ".samples");
+        try {
+            DictionarySampler sampler = new DictionarySampler(path, 3);
+            for (int i = 0; i < 5; i++) {
+                byte[] body = request(i);
+                sampler.offer(body, 0, body.length);
+            }
+            //样本文件异步写出
+            List<byte[]> samples = new ArrayList<>();
+            for (int i = 0; i < 50 && samples.size() != 3; i++) {
+                Thread.sleep(100);
+                try (InputStream in = Files.newInputStream(path)) {
+                    samples = DictionaryTrainer.readSamples(in);
+                } catch (IOException e) {
+                    //文件还没有写完
+                }
+            }
+            assertEquals(3, samples.size());
+            assertArrayEquals(request(2), samples.get(2));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DictionaryTrainer.writeSamples(samples, out);
+            assertEquals(3, DictionaryTrainer.readSamples(new ByteArrayInputStream(out.toByteArray())).size());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private byte[] request(int i) {
+        RpcRequest rpcRequest = RpcRequest.builder()
+                .interfaceName("github.jojo.HelloService")
+                .methodName(i % 2 == 0 ? "hello" : "sayHello")
+                .parameters(new Object[]{"message-" + i, i})
+                .paramTypes(new Class<?>[]{String.class, Integer.class})
+                .group("test" + i % 3)
+                .version("version1").build();
+        return serializer.serialize(rpcRequest);
+    }
+}
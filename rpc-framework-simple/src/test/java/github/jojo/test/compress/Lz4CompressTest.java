@@ -0,0 +1,162 @@
+package github.jojo.test.compress;
+
+import github.jojo.compress.Compress;
+import github.jojo.compress.gzip.GzipCompress;
+import github.jojo.compress.lz4.Lz4Compress;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/2/25 21:40
+ * @description -----------lz4压缩与解压（byte[]与ByteBuf两种方式 包括重叠匹配、长literal、不可压缩数据）----------
+ */
+@Slf4j
+public class Lz4CompressTest {
+
+    private final Compress lz4 = new Lz4Compress();
+
+    @Test
+    public void testRoundTrip() {
+        for (byte[] data : samples()) {
+            byte[] compressed = lz4.compress(data);
+            assertArrayEquals(data, lz4.decompress(compressed));
+            assertArrayEquals(data, decompress(compressed, true));
+            assertArrayEquals(data, decompress(compressed, false));
+            //ByteBuf压缩结果应该与byte[]压缩结果一致
+            assertArrayEquals(compressed, compress(data, true));
+            assertArrayEquals(compressed, compress(data, false));
+        }
+    }
+
+    @Test
+    public void testCompressRatio() {
+        byte[] data = repeated(4096);
+        assertTrue(lz4.compress(data).length < data.length / 4);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testMalformedBlock() {
+        byte[] compressed = lz4.compress(repeated(1024));
+        compressed[compressed.length / 2] = (byte) 0xFF;
+        compressed[compressed.length / 2 + 1] = (byte) 0xFF;
+        lz4.decompress(compressed);
+    }
+
+    /**
+     * 只有几个字节的数据声明了超大的原始长度 解压前直接拒绝 不分配内存
+     */
+    @Test
+    public void testOriginalLengthTooLarge() {
+        byte[] compressed = lz4.compress("jojo".getBytes(StandardCharsets.UTF_8));
+        for (int originalLength : new int[]{Compress.MAX_DECOMPRESSED_LENGTH + 1, Integer.MAX_VALUE}) {
+            compressed[0] = (byte) (originalLength >>> 24);
+            compressed[1] = (byte) (originalLength >>> 16);
+            compressed[2] = (byte) (originalLength >>> 8);
+            compressed[3] = (byte) originalLength;
+            try {
+                lz4.decompress(compressed);
+                fail();
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("invalid original length"));
+            }
+            ByteBuf in = PooledByteBufAllocator.DEFAULT.heapBuffer();
+            in.writeBytes(compressed);
+            try {
+                lz4.decompress(in, PooledByteBufAllocator.DEFAULT);
+                fail();
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("invalid original length"));
+            } finally {
+                in.release();
+            }
+        }
+    }
+
+    /**
+     * 与gzip的耗时对比 仅输出到日志 结果受机器负载影响 需要时手动运行
+     */
+    @Ignore("benchmark, run manually")
+    @Test
+    public void testThroughput() {
+        byte[] data = repeated(16 * 1024);
+        Compress gzip = new GzipCompress();
+        int times = 2000;
+        for (Compress compress : new Compress[]{gzip, lz4, gzip, lz4}) {
+            long start = System.nanoTime();
+            for (int i = 0; i < times; i++) {
+                compress.decompress(compress.compress(data));
+            }
+            long cost = System.nanoTime() - start;
+            log.info("{}: {} MB/s", compress.getClass().getSimpleName(),
+                    String.format("%.1f", (double) data.length * times / cost * 1000));
+        }
+    }
+
+    private byte[] compress(byte[] data, boolean direct) {
+        ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+        ByteBuf in = direct ? allocator.directBuffer() : allocator.heapBuffer();
+        ByteBuf out = direct ? allocator.directBuffer() : allocator.heapBuffer();
+        try {
+            in.writeBytes(data);
+            lz4.compress(in, out);
+            return ByteBufUtil.getBytes(out);
+        } finally {
+            in.release();
+            out.release();
+        }
+    }
+
+    private byte[] decompress(byte[] compressed, boolean direct) {
+        ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+        ByteBuf in = direct ? allocator.directBuffer() : allocator.heapBuffer();
+        in.writeBytes(compressed);
+        ByteBuf out = lz4.decompress(in, allocator);
+        try {
+            return ByteBufUtil.getBytes(out);
+        } finally {
+            in.release();
+            out.release();
+        }
+    }
+
+    private byte[][] samples() {
+        byte[] random = new byte[100000];
+        new Random(7).nextBytes(random);
+        byte[] runs = new byte[70000];
+        for (int i = 0; i < runs.length; i++) {
+            runs[i] = (byte) (i / 300);
+        }
+        return new byte[][]{
+                new byte[0],
+                "jojo".getBytes(StandardCharsets.UTF_8),
+                "abcdefghijklmnop".getBytes(StandardCharsets.UTF_8),
+                repeated(100),
+                repeated(100000),
+                random,
+                runs
+        };
+    }
+
+    private byte[] repeated(int length) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (sb.length() < length) {
+            sb.append("{\"interfaceName\":\"github.jojo.HelloService\",\"id\":").append(i++ % 97).append('}');
+        }
+        return sb.substring(0, length).getBytes(StandardCharsets.UTF_8);
+    }
+}
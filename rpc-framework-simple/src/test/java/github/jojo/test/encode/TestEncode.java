@@ -1,8 +1,39 @@
 package github.jojo.test.encode;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import github.jojo.enums.CompressTypeEnum;
+import github.jojo.enums.RpcConfigEnum;
+import github.jojo.enums.SerializationTypeEnum;
+import github.jojo.remoting.constants.RpcConstants;
+import github.jojo.remoting.dto.RpcMessage;
+import github.jojo.remoting.dto.RpcRequest;
+import github.jojo.remoting.transport.netty.codec.RpcMessageDecoder;
 import github.jojo.remoting.transport.netty.codec.RpcMessageEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.EncoderException;
+import io.netty.util.ReferenceCountUtil;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 /**
  * @author zzj
  * @version 1.0
@@ -16,4 +47,210 @@ public class TestEncode {
         RpcMessageEncoder encoder=new RpcMessageEncoder();
     }
 
+    /**
+     * 编码后的帧再经过解码器 得到的request应该与原request一致（kryo与protostuff两种序列化方式）
+     */
+    @Test
+    public void testEncodeDecode() {
+        for (SerializationTypeEnum codec : SerializationTypeEnum.values()) {
+            for (CompressTypeEnum compress : new CompressTypeEnum[]{CompressTypeEnum.GZIP, CompressTypeEnum.LZ4}) {
+                //小消息低于压缩阈值 不压缩
+                assertEncodeDecode(codec, compress, "jojo", CompressTypeEnum.NONE);
+                //大且重复度高的消息 使用期望的压缩类型
+                assertEncodeDecode(codec, compress, String.join("", Collections.nCopies(512, "jojo")), compress);
+            }
+        }
+    }
+
+    /**
+     * 开启精简请求后 同一连接上第二次调用同一方法只发送methodId和参数 解码后补全为完整请求
+     */
+    @Test
+    public void testCompactInvocation() {
+        System.setProperty(RpcConfigEnum.COMPACT_INVOCATION.getPropertyValue(), "true");
+        try {
+            EmbeddedChannel encodeChannel = new EmbeddedChannel(new RpcMessageEncoder());
+            EmbeddedChannel decodeChannel = new EmbeddedChannel(new RpcMessageDecoder());
+            int[] frameLength = new int[2];
+            for (int i = 0; i < 2; i++) {
+                RpcRequest rpcRequest = RpcRequest.builder()
+                        .interfaceName("github.jojo.HelloService")
+                        .methodName("hello")
+                        .parameters(new Object[]{"jojo"})
+                        .paramTypes(new Class<?>[]{String.class})
+                        .group("test1")
+                        .version("version1").build();
+                encodeChannel.writeOutbound(RpcMessage.builder()
+                        .requestId(i + 1)
+                        .messageType(RpcConstants.REQUEST_TYPE)
+                        .codec(SerializationTypeEnum.KYRO.getCode())
+                        .compress(CompressTypeEnum.NONE.getCode())
+                        .data(rpcRequest).build());
+                ByteBuf frame = encodeChannel.readOutbound();
+                frameLength[i] = frame.readableBytes();
+                decodeChannel.writeInbound(frame);
+                RpcMessage decodedMessage = decodeChannel.readInbound();
+                assertEquals(i + 1, decodedMessage.getRequestId());
+                RpcRequest decoded = (RpcRequest) decodedMessage.getData();
+                assertEquals(1, decoded.getMethodId());
+                assertEquals(rpcRequest.getInterfaceName(), decoded.getInterfaceName());
+                assertEquals(rpcRequest.getMethodName(), decoded.getMethodName());
+                assertEquals(rpcRequest.getGroup(), decoded.getGroup());
+                assertEquals(rpcRequest.getVersion(), decoded.getVersion());
+                assertArrayEquals(rpcRequest.getParamTypes(), decoded.getParamTypes());
+                assertArrayEquals(rpcRequest.getParameters(), decoded.getParameters());
+            }
+            assertTrue(frameLength[1] < frameLength[0] / 2);
+        } finally {
+            System.clearProperty(RpcConfigEnum.COMPACT_INVOCATION.getPropertyValue());
+        }
+    }
+
+    /**
+     * 声明帧写出失败时撤销声明 下一次调用重新发送完整请求 服务端不会收到未知的methodId
+     */
+    @Test
+    public void testRedeclareAfterWriteFailure() {
+        System.setProperty(RpcConfigEnum.COMPACT_INVOCATION.getPropertyValue(), "true");
+        try {
+            AtomicBoolean fail = new AtomicBoolean(true);
+            EmbeddedChannel encodeChannel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+                @Override
+                public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+                    if (fail.getAndSet(false)) {
+                        ReferenceCountUtil.release(msg);
+                        promise.setFailure(new IOException("write failed"));
+                        return;
+                    }
+                    super.write(ctx, msg, promise);
+                }
+            }, new RpcMessageEncoder());
+            RpcRequest rpcRequest = RpcRequest.builder()
+                    .interfaceName("github.jojo.HelloService")
+                    .methodName("hello")
+                    .parameters(new Object[]{"jojo"})
+                    .paramTypes(new Class<?>[]{String.class})
+                    .group("test1")
+                    .version("version1").build();
+            RpcMessage rpcMessage = RpcMessage.builder()
+                    .requestId(1)
+                    .messageType(RpcConstants.REQUEST_TYPE)
+                    .codec(SerializationTypeEnum.KYRO.getCode())
+                    .compress(CompressTypeEnum.NONE.getCode())
+                    .data(rpcRequest).build();
+            assertFalse(encodeChannel.writeOneOutbound(rpcMessage).isSuccess());
+            encodeChannel.writeOutbound(rpcMessage);
+
+            EmbeddedChannel decodeChannel = new EmbeddedChannel(new RpcMessageDecoder());
+            decodeChannel.writeInbound((ByteBuf) encodeChannel.readOutbound());
+            RpcRequest decoded = (RpcRequest) ((RpcMessage) decodeChannel.readInbound()).getData();
+            assertEquals(rpcRequest.getInterfaceName(), decoded.getInterfaceName());
+            assertEquals(rpcRequest.getMethodName(), decoded.getMethodName());
+        } finally {
+            System.clearProperty(RpcConfigEnum.COMPACT_INVOCATION.getPropertyValue());
+        }
+    }
+
+    public static class Unserializable implements KryoSerializable {
+        @Override
+        public void write(Kryo kryo, Output output) {
+            throw new IllegalStateException("unserializable");
+        }
+
+        @Override
+        public void read(Kryo kryo, Input input) {
+        }
+    }
+
+    /**
+     * 序列化失败时write的promise失败 不会写出半个帧 之后的消息正常编码
+     */
+    @Test
+    public void testEncodeFailure() {
+        EmbeddedChannel encodeChannel = new EmbeddedChannel(new RpcMessageEncoder());
+        RpcMessage bad = request(1, new Unserializable());
+        ChannelFuture future = encodeChannel.writeOneOutbound(bad);
+        encodeChannel.flushOutbound();
+        assertFalse(future.isSuccess());
+        assertTrue(future.cause() instanceof EncoderException);
+        assertNull(encodeChannel.readOutbound());
+
+        encodeChannel.writeOutbound(request(2, "jojo"));
+        EmbeddedChannel decodeChannel = new EmbeddedChannel(new RpcMessageDecoder());
+        decodeChannel.writeInbound((ByteBuf) encodeChannel.readOutbound());
+        RpcMessage decoded = decodeChannel.readInbound();
+        assertEquals(2, decoded.getRequestId());
+    }
+
+    private static RpcMessage request(int requestId, Object parameter) {
+        RpcRequest rpcRequest = RpcRequest.builder()
+                .interfaceName("github.jojo.HelloService")
+                .methodName("hello")
+                .parameters(new Object[]{parameter})
+                .paramTypes(new Class<?>[]{Object.class})
+                .group("test1")
+                .version("version1").build();
+        return RpcMessage.builder()
+                .requestId(requestId)
+                .messageType(RpcConstants.REQUEST_TYPE)
+                .codec(SerializationTypeEnum.KYRO.getCode())
+                .compress(CompressTypeEnum.NONE.getCode())
+                .data(rpcRequest).build();
+    }
+
+    /**
+     * 帧头中未知的序列化类型在读取body之前就被拒绝
+     */
+    @Test(expected = DecoderException.class)
+    public void testUnknownCodec() {
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeBytes(RpcConstants.MAGIC_NUMBER);
+        frame.writeByte(RpcConstants.VERSION);
+        frame.writeInt(RpcConstants.HEAD_LENGTH + 4);
+        frame.writeByte(RpcConstants.REQUEST_TYPE);
+        frame.writeByte(0x7F);
+        frame.writeByte(CompressTypeEnum.NONE.getCode());
+        frame.writeInt(1);
+        frame.writeInt(0);
+        frame.writeInt(0);
+        new EmbeddedChannel(new RpcMessageDecoder()).writeInbound(frame);
+    }
+
+    private void assertEncodeDecode(SerializationTypeEnum codec, CompressTypeEnum compress, String parameter,
+                                    CompressTypeEnum expectedCompress) {
+        RpcRequest rpcRequest = RpcRequest.builder()
+                .interfaceName("github.jojo.HelloService")
+                .methodName("hello")
+                .parameters(new Object[]{parameter})
+                .paramTypes(new Class<?>[]{String.class})
+                .group("test1")
+                .version("version1").build();
+        RpcMessage rpcMessage = RpcMessage.builder()
+                .requestId(1)
+                .timeout(3000)
+                .messageType(RpcConstants.REQUEST_TYPE)
+                .codec(codec.getCode())
+                .compress(compress.getCode())
+                .data(rpcRequest).build();
+
+        EmbeddedChannel encodeChannel = new EmbeddedChannel(new RpcMessageEncoder());
+        encodeChannel.writeOutbound(rpcMessage);
+        ByteBuf frame = encodeChannel.readOutbound();
+        //回填的消息长度应该等于整个帧的长度
+        assertEquals(frame.readableBytes(), frame.getInt(RpcConstants.MAGIC_NUMBER.length + 1));
+        assertEquals(expectedCompress.getCode(), frame.getByte(11));
+
+        EmbeddedChannel decodeChannel = new EmbeddedChannel(new RpcMessageDecoder());
+        decodeChannel.writeInbound(frame);
+        RpcMessage decoded = decodeChannel.readInbound();
+        assertEquals(1, decoded.getRequestId());
+        assertEquals(3000, decoded.getTimeout());
+        assertTrue(decoded.getReceiveNanos() != 0);
+        RpcRequest decodedRequest = (RpcRequest) decoded.getData();
+        assertEquals(rpcRequest.getInterfaceName(), decodedRequest.getInterfaceName());
+        assertEquals(rpcRequest.getMethodName(), decodedRequest.getMethodName());
+        assertArrayEquals(rpcRequest.getParameters(), decodedRequest.getParameters());
+        assertArrayEquals(rpcRequest.getParamTypes(), decodedRequest.getParamTypes());
+    }
+
 }
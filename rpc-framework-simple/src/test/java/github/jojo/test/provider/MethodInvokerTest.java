@@ -0,0 +1,152 @@
+package github.jojo.test.provider;
+
+import com.esotericsoftware.reflectasm.MethodAccess;
+import github.jojo.entity.RpcServiceProperties;
+import github.jojo.exception.RpcException;
+import github.jojo.factory.SingletonFactory;
+import github.jojo.provider.MethodInvoker;
+import github.jojo.provider.ServiceProviderImpl;
+import github.jojo.remoting.dto.RpcRequest;
+import github.jojo.remoting.handler.RpcRequestHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/3 21:05
+ * @description -----------发布服务时构建的方法调用器：重载分发、异常传递 以及与反射调用的耗时对比----------
+ */
+@Slf4j
+public class MethodInvokerTest {
+
+    public interface CalcService {
+        int add(int a, int b);
+
+        long add(long a, long b);
+
+        String echo(String s);
+
+        String ping();
+    }
+
+    public static class CalcServiceImpl implements CalcService {
+        @Override
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        @Override
+        public long add(long a, long b) {
+            return a + b + 1;
+        }
+
+        @Override
+        public String echo(String s) {
+            if (s == null) {
+                throw new IllegalStateException("echo null");
+            }
+            return s;
+        }
+
+        @Override
+        public String ping() {
+            return "pong";
+        }
+    }
+
+    private static final RpcServiceProperties PROPERTIES = RpcServiceProperties.builder()
+            .serviceName(CalcService.class.getName()).group("calc").version("1").build();
+
+    @BeforeClass
+    public static void publish() {
+        SingletonFactory.getInstance(ServiceProviderImpl.class).addService(new CalcServiceImpl(), CalcService.class, PROPERTIES);
+    }
+
+    @Test
+    public void testDispatch() {
+        RpcRequestHandler handler = SingletonFactory.getInstance(RpcRequestHandler.class);
+        assertEquals(3, handler.handle(request("add", new Class<?>[]{int.class, int.class}, 1, 2)));
+        assertEquals(4L, handler.handle(request("add", new Class<?>[]{long.class, long.class}, 1L, 2L)));
+        //无参方法客户端传来的parameters为null
+        assertEquals("pong", handler.handle(request("ping", new Class<?>[0], (Object[]) null)));
+        try {
+            handler.handle(request("echo", new Class<?>[]{String.class}, (Object) null));
+            fail();
+        } catch (RpcException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        try {
+            handler.handle(request("add", new Class<?>[]{String.class}, "1"));
+            fail();
+        } catch (RpcException e) {
+            assertTrue(e.getMessage().contains("add"));
+        }
+    }
+
+    /**
+     * 原来的每次getMethod+反射调用、缓存Method后的反射调用、MethodInvoker(MethodHandle)以及reflectasm生成字节码的调用耗时
+     * 耗时对比只输出到日志 结果受机器负载影响 需要时手动运行
+     */
+    @Ignore("benchmark, run manually")
+    @Test
+    public void testInvokeCost() throws Throwable {
+        CalcServiceImpl service = new CalcServiceImpl();
+        Class<?>[] paramTypes = {String.class};
+        Object[] args = {"jojo"};
+        int iterations = 2_000_000;
+        MethodInvoker invoker = SingletonFactory.getInstance(ServiceProviderImpl.class)
+                .getInvoker(PROPERTIES, "echo", paramTypes);
+        Method method = CalcService.class.getMethod("echo", paramTypes);
+        MethodAccess access = MethodAccess.get(CalcServiceImpl.class);
+        int index = access.getIndex("echo", paramTypes);
+
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                service.getClass().getMethod("echo", paramTypes).invoke(service, args);
+            }
+            long lookupReflection = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                method.invoke(service, args);
+            }
+            long cachedReflection = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                invoker.invoke(args);
+            }
+            long methodHandle = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                access.invoke(service, index, args);
+            }
+            long generated = System.nanoTime() - start;
+            //第一轮为预热
+            if (round == 1) {
+                log.info(String.format("ns/op getMethod+invoke: %.1f, cached Method.invoke: %.1f, MethodHandle invoker: %.1f, reflectasm: %.1f",
+                        (double) lookupReflection / iterations, (double) cachedReflection / iterations,
+                        (double) methodHandle / iterations, (double) generated / iterations));
+            }
+        }
+        assertEquals("jojo", invoker.invoke(args));
+    }
+
+    private static RpcRequest request(String methodName, Class<?>[] paramTypes, Object... parameters) {
+        return RpcRequest.builder()
+                .interfaceName(CalcService.class.getName())
+                .methodName(methodName)
+                .paramTypes(paramTypes)
+                .parameters(parameters)
+                .group("calc")
+                .version("1").build();
+    }
+}
@@ -0,0 +1,131 @@
+package github.jojo.test.proxy;
+
+import github.jojo.enums.RpcResponseCodeEnum;
+import github.jojo.exception.RpcException;
+import github.jojo.proxy.RpcAsync;
+import github.jojo.proxy.RpcClientProxy;
+import github.jojo.proxy.RpcDeadline;
+import github.jojo.remoting.dto.RpcRequest;
+import github.jojo.remoting.dto.RpcResponse;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/1 16:20
+ * @description -----------客户端异步调用（返回CompletableFuture的接口方法、RpcAsync包装同步接口）----------
+ */
+public class RpcClientProxyAsyncTest {
+
+    public interface EchoService {
+        String echo(String message);
+
+        int count();
+
+        CompletableFuture<String> echoAsync(String message);
+    }
+
+    /**
+     * 记录发送的请求 由测试手动完成响应
+     */
+    private final List<CompletableFuture<RpcResponse<Object>>> pending = new ArrayList<>();
+    private final List<RpcRequest> requests = new ArrayList<>();
+
+    private EchoService proxy() {
+        RpcClientProxy rpcClientProxy = new RpcClientProxy(rpcRequest -> {
+            CompletableFuture<RpcResponse<Object>> future = new CompletableFuture<>();
+            requests.add(rpcRequest);
+            pending.add(future);
+            return future;
+        });
+        return rpcClientProxy.getProxy(EchoService.class);
+    }
+
+    @Test
+    public void testFutureReturnType() throws Exception {
+        EchoService echoService = proxy();
+        CompletableFuture<String> future = echoService.echoAsync("jojo");
+        //响应到达之前不会阻塞
+        assertFalse(future.isDone());
+        assertEquals("echoAsync", requests.get(0).getMethodName());
+        pending.get(0).complete(RpcResponse.success("jojo"));
+        assertEquals("jojo", future.get());
+    }
+
+    @Test
+    public void testRpcAsync() throws Exception {
+        EchoService echoService = proxy();
+        CompletableFuture<String> echo = RpcAsync.call(() -> echoService.echo("jojo"));
+        //基本类型的返回值也可以异步调用
+        CompletableFuture<Integer> count = RpcAsync.call(echoService::count);
+        assertFalse(echo.isDone());
+        assertFalse(count.isDone());
+        pending.get(1).complete(RpcResponse.success(3));
+        pending.get(0).complete(RpcResponse.success("jojo"));
+        assertEquals("jojo", echo.get());
+        assertEquals(Integer.valueOf(3), count.get());
+    }
+
+    @Test
+    public void testAsyncFailure() throws Exception {
+        EchoService echoService = proxy();
+        CompletableFuture<String> future = echoService.echoAsync("jojo");
+        pending.get(0).complete(RpcResponse.fail(RpcResponseCodeEnum.FAIL));
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RpcException);
+        }
+    }
+
+    /**
+     * 同一个方法的元数据只计算一次 预先计算的服务名与按字段计算的一致
+     */
+    @Test
+    public void testMethodMetadataCached() {
+        EchoService echoService = proxy();
+        echoService.echoAsync("jo");
+        echoService.echoAsync("jo");
+        RpcRequest first = requests.get(0);
+        RpcRequest second = requests.get(1);
+        assertSame(first.getParamTypes(), second.getParamTypes());
+        assertSame(first.toRpcServiceName(), second.toRpcServiceName());
+        assertEquals(first.toRpcProperties().toRpcServiceName(), first.toRpcServiceName());
+        assertEquals(EchoService.class.getName() + "#echoAsync", first.toMethodKey());
+    }
+
+    /**
+     * RpcDeadline中的调用以剩余时间作为超时时间 已经过期时不再发送请求
+     */
+    @Test
+    public void testDeadline() throws Exception {
+        EchoService echoService = proxy();
+        RpcDeadline.call(200, () -> echoService.echoAsync("jojo"));
+        long timeout = requests.get(0).getTimeout();
+        assertTrue(timeout > 0 && timeout <= 200);
+        //没有截止时间时使用客户端默认的超时时间
+        echoService.echoAsync("jojo");
+        assertEquals(0, requests.get(1).getTimeout());
+
+        CompletableFuture<String> expired = RpcDeadline.call(0, () -> echoService.echoAsync("jojo"));
+        assertEquals(2, requests.size());
+        try {
+            expired.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RpcException);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package github.jojo.test.serialize;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import github.jojo.exception.SerializeException;
+import github.jojo.remoting.dto.RpcRequest;
+import github.jojo.remoting.dto.RpcResponse;
+import github.jojo.serialize.kyro.KryoSerializer;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/2/23 21:30
+ * @description ----------kryo对象池 序列化+反序列化吞吐量对比（每次新建kryo vs 对象池复用）----------
+ */
+@Slf4j
+public class KryoSerializerTest {
+
+    private static final int WARM_UP = 2000;
+    private static final int ITERATIONS = 20000;
+
+    private final KryoSerializer kryoSerializer = new KryoSerializer();
+
+    private RpcRequest newRequest() {
+        return RpcRequest.builder()
+                .interfaceName("github.jojo.HelloService")
+                .methodName("hello")
+                .parameters(new Object[]{"jojo", 1})
+                .paramTypes(new Class<?>[]{String.class, Integer.class})
+                .group("test1")
+                .version("version1").build();
+    }
+
+    @Test
+    public void testSerialize() {
+        RpcRequest rpcRequest = newRequest();
+        byte[] bytes = kryoSerializer.serialize(rpcRequest);
+        RpcRequest actual = kryoSerializer.deserialize(bytes, RpcRequest.class);
+        assertEquals(rpcRequest.getInterfaceName(), actual.getInterfaceName());
+        assertArrayEquals(rpcRequest.getParameters(), actual.getParameters());
+        assertArrayEquals(rpcRequest.getParamTypes(), actual.getParamTypes());
+    }
+
+    @Test
+    public void testDeserializeErrorKeepsCause() {
+        try {
+            kryoSerializer.deserialize(new byte[]{1, 2, 3}, RpcRequest.class);
+            fail();
+        } catch (SerializeException e) {
+            //kryo抛出的原始异常作为cause保留 便于定位
+            assertNotNull(e.getCause());
+        }
+    }
+
+    /**
+     * 旧实现：ThreadLocal用完即remove 相当于每次调用都新建kryo并注册类
+     */
+    private Object perCallKryoRoundTrip(Object obj) {
+        Kryo kryo = new Kryo();
+        kryo.register(RpcResponse.class);
+        kryo.register(RpcRequest.class);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        Output output = new Output(byteArrayOutputStream);
+        kryo.writeObject(output, obj);
+        byte[] bytes = output.toBytes();
+        kryo = new Kryo();
+        kryo.register(RpcResponse.class);
+        kryo.register(RpcRequest.class);
+        return kryo.readObject(new Input(new ByteArrayInputStream(bytes)), RpcRequest.class);
+    }
+
+    private Object pooledKryoRoundTrip(Object obj) {
+        return kryoSerializer.deserialize(kryoSerializer.serialize(obj), RpcRequest.class);
+    }
+
+    /**
+     * 吞吐量只输出到日志 结果受机器负载影响 需要时手动运行
+     */
+    @Ignore("benchmark, run manually")
+    @Test
+    public void testThroughput() {
+        RpcRequest rpcRequest = newRequest();
+        for (int i = 0; i < WARM_UP; i++) {
+            perCallKryoRoundTrip(rpcRequest);
+            pooledKryoRoundTrip(rpcRequest);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            perCallKryoRoundTrip(rpcRequest);
+        }
+        long perCall = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            pooledKryoRoundTrip(rpcRequest);
+        }
+        long pooled = System.nanoTime() - start;
+        assertEquals(rpcRequest.getMethodName(), ((RpcRequest) pooledKryoRoundTrip(rpcRequest)).getMethodName());
+        log.info("每次新建kryo 序列化+反序列化: {} ops/s", ITERATIONS * 1_000_000_000L / perCall);
+        log.info("kryo对象池   序列化+反序列化: {} ops/s", ITERATIONS * 1_000_000_000L / pooled);
+    }
+}
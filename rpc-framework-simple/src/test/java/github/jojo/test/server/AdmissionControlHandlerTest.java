@@ -0,0 +1,77 @@
+package github.jojo.test.server;
+
+import github.jojo.enums.RpcResponseCodeEnum;
+import github.jojo.remoting.constants.RpcConstants;
+import github.jojo.remoting.dto.RpcMessage;
+import github.jojo.remoting.dto.RpcRequest;
+import github.jojo.remoting.dto.RpcResponse;
+import github.jojo.remoting.transport.netty.server.AdmissionControlHandler;
+import github.jojo.remoting.transport.netty.server.AdmissionController;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/5 21:30
+ * @description -----------准入控制：全局与每个服务的积压上限 超过后在IO线程直接返回OVERLOADED----------
+ */
+public class AdmissionControlHandlerTest {
+
+    private static final String SERVICE_A = "github.jojo.AService";
+    private static final String SERVICE_B = "github.jojo.BService";
+
+    @Test
+    public void testReject() {
+        //全局上限2 每个服务默认上限1 B服务单独指定上限2
+        AdmissionController admissionController = new AdmissionController(2, 1, Collections.singletonMap(SERVICE_B, 2));
+        EmbeddedChannel channel = new EmbeddedChannel(new AdmissionControlHandler(admissionController));
+
+        assertAdmitted(channel, request(1, SERVICE_A), SERVICE_A);
+        //A服务达到上限
+        assertRejected(channel, request(2, SERVICE_A));
+        assertAdmitted(channel, request(3, SERVICE_B), SERVICE_B);
+        //全局达到上限
+        assertRejected(channel, request(4, SERVICE_B));
+        assertEquals(2, admissionController.pending());
+
+        //A服务的请求处理结束 释放名额
+        admissionController.release(SERVICE_A);
+        assertAdmitted(channel, request(5, SERVICE_B), SERVICE_B);
+        assertEquals(2, admissionController.pending(SERVICE_B));
+        assertEquals(0, admissionController.pending(SERVICE_A));
+        assertEquals(2, admissionController.rejected());
+    }
+
+    private void assertAdmitted(EmbeddedChannel channel, RpcMessage request, String rpcServiceName) {
+        channel.writeInbound(request);
+        RpcMessage admitted = channel.readInbound();
+        assertEquals(rpcServiceName, admitted.getAdmittedService());
+        assertNull(channel.readOutbound());
+    }
+
+    private void assertRejected(EmbeddedChannel channel, RpcMessage request) {
+        channel.writeInbound(request);
+        assertNull(channel.readInbound());
+        RpcMessage response = channel.readOutbound();
+        assertEquals(request.getRequestId(), response.getRequestId());
+        assertEquals(RpcResponseCodeEnum.OVERLOADED.getCode(), (int) ((RpcResponse<?>) response.getData()).getCode());
+    }
+
+    private RpcMessage request(int requestId, String interfaceName) {
+        RpcRequest rpcRequest = RpcRequest.builder()
+                .interfaceName(interfaceName)
+                .methodName("hello")
+                .group("")
+                .version("").build();
+        return RpcMessage.builder()
+                .requestId(requestId)
+                .messageType(RpcConstants.REQUEST_TYPE)
+                .data(rpcRequest).build();
+    }
+}
@@ -0,0 +1,111 @@
+package github.jojo.test.server;
+
+import github.jojo.enums.RpcConfigEnum;
+import github.jojo.remoting.constants.RpcConstants;
+import github.jojo.remoting.dto.RpcMessage;
+import github.jojo.remoting.transport.netty.client.NettyRpcClientInitializer;
+import github.jojo.remoting.transport.netty.codec.RpcMessageEncoder;
+import github.jojo.remoting.transport.netty.server.NettyRpcServerInitializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import org.junit.Test;
+
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/9 21:30
+ * @description -----------合并flush：服务端/客户端的pipeline中 一次读事件中写出的多个响应只产生一次flush----------
+ */
+public class FlushConsolidationTest {
+
+    /**
+     * 记录真正到达head(即socket)的flush次数
+     */
+    private static class FlushCounter extends ChannelOutboundHandlerAdapter {
+        private int flushes;
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            flushes++;
+            super.flush(ctx);
+        }
+    }
+
+    @Test
+    public void testConsolidateInRead() {
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyRpcServerInitializer(null));
+        //合并flush位于最靠近head的位置
+        assertTrue(channel.pipeline().first() instanceof FlushConsolidationHandler);
+        FlushCounter counter = new FlushCounter();
+        channel.pipeline().addFirst(counter);
+        //同一次读事件中的3个心跳请求 每个都会writeAndFlush一个响应
+        channel.writeInbound(ping(1), ping(2), ping(3));
+        assertEquals(1, counter.flushes);
+        assertEquals(3, channel.outboundMessages().size());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testExplicitFlushAfterFlushes() {
+        EmbeddedChannel channel = new EmbeddedChannel(withFlushConsolidation("2", () -> new NettyRpcServerInitializer(null)));
+        FlushCounter counter = new FlushCounter();
+        channel.pipeline().addFirst(counter);
+        //读事件很长时 每写出2个响应强制flush一次 避免响应积压
+        channel.writeInbound(ping(1), ping(2), ping(3), ping(4), ping(5));
+        assertEquals(3, counter.flushes);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testDisabled() {
+        EmbeddedChannel channel = new EmbeddedChannel(withFlushConsolidation("0", () -> new NettyRpcServerInitializer(null)));
+        assertNull(channel.pipeline().get(FlushConsolidationHandler.class));
+        FlushCounter counter = new FlushCounter();
+        channel.pipeline().addFirst(counter);
+        //关闭后每个响应各自flush
+        channel.writeInbound(ping(1), ping(2), ping(3));
+        assertEquals(3, counter.flushes);
+        channel.finishAndReleaseAll();
+
+        EmbeddedChannel clientChannel = new EmbeddedChannel(withFlushConsolidation("0", NettyRpcClientInitializer::new));
+        assertNull(clientChannel.pipeline().get(FlushConsolidationHandler.class));
+        clientChannel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testClientPipeline() {
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyRpcClientInitializer());
+        assertTrue(channel.pipeline().first() instanceof FlushConsolidationHandler);
+        channel.finishAndReleaseAll();
+    }
+
+    private static <T> T withFlushConsolidation(String value, Supplier<T> initializer) {
+        System.setProperty(RpcConfigEnum.FLUSH_CONSOLIDATION.getPropertyValue(), value);
+        try {
+            return initializer.get();
+        } finally {
+            System.clearProperty(RpcConfigEnum.FLUSH_CONSOLIDATION.getPropertyValue());
+        }
+    }
+
+    /**
+     * 编码后的心跳请求帧
+     */
+    private static ByteBuf ping(int requestId) {
+        EmbeddedChannel encodeChannel = new EmbeddedChannel(new RpcMessageEncoder());
+        encodeChannel.writeOutbound(RpcMessage.builder()
+                .requestId(requestId)
+                .messageType(RpcConstants.HEARTBEAT_REQUEST_TYPE)
+                .data(RpcConstants.PING).build());
+        return encodeChannel.readOutbound();
+    }
+}
@@ -0,0 +1,124 @@
+package github.jojo.test.server;
+
+import github.jojo.entity.RpcServiceProperties;
+import github.jojo.enums.RpcResponseCodeEnum;
+import github.jojo.factory.SingletonFactory;
+import github.jojo.provider.ServiceProviderImpl;
+import github.jojo.proxy.RpcDeadline;
+import github.jojo.remoting.constants.RpcConstants;
+import github.jojo.remoting.dto.RpcMessage;
+import github.jojo.remoting.dto.RpcRequest;
+import github.jojo.remoting.dto.RpcResponse;
+import github.jojo.remoting.transport.netty.server.NettyRpcServerHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/2 10:40
+ * @description -----------服务端处理异步服务实现（future完成后才写回响应 失败时写回失败响应）----------
+ */
+public class NettyRpcServerHandlerTest {
+
+    public interface AsyncService {
+        CompletableFuture<String> hello(String name);
+    }
+
+    private static final CompletableFuture<String> RESULT = new CompletableFuture<>();
+
+    public static class AsyncServiceImpl implements AsyncService {
+        @Override
+        public CompletableFuture<String> hello(String name) {
+            return RESULT;
+        }
+    }
+
+    public interface DeadlineService {
+        long remaining(String name);
+    }
+
+    public static class DeadlineServiceImpl implements DeadlineService {
+        @Override
+        public long remaining(String name) {
+            //服务实现中的嵌套调用使用的剩余时间
+            return RpcDeadline.remainingMillis();
+        }
+    }
+
+    @Test
+    public void testAsyncService() {
+        SingletonFactory.getInstance(ServiceProviderImpl.class).addService(new AsyncServiceImpl(), AsyncService.class,
+                RpcServiceProperties.builder().serviceName(AsyncService.class.getName()).group("async").version("1").build());
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyRpcServerHandler());
+        channel.writeInbound(request(7, "hello"));
+        //future还没有完成 不写回响应
+        assertNull(channel.readOutbound());
+        RESULT.complete("jojo");
+        RpcMessage response = channel.readOutbound();
+        assertEquals(7, response.getRequestId());
+        assertEquals("jojo", ((RpcResponse<?>) response.getData()).getData());
+
+        //找不到的方法写回失败响应 连接不会被关闭
+        channel.writeInbound(request(8, "notExist"));
+        response = channel.readOutbound();
+        assertEquals(8, response.getRequestId());
+        assertEquals(RpcResponseCodeEnum.FAIL.getCode(), (int) ((RpcResponse<?>) response.getData()).getCode());
+        assertTrue(channel.isActive());
+    }
+
+    /**
+     * 排队期间已经过期的请求被丢弃 未过期的请求在处理期间线程上带有剩余的截止时间
+     */
+    @Test
+    public void testDeadline() {
+        SingletonFactory.getInstance(ServiceProviderImpl.class).addService(new DeadlineServiceImpl(), DeadlineService.class,
+                RpcServiceProperties.builder().serviceName(DeadlineService.class.getName()).group("deadline").version("1").build());
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyRpcServerHandler());
+        long expired = NettyRpcServerHandler.expiredRequests();
+        RpcMessage late = request(DeadlineService.class, "deadline", 1, "remaining");
+        late.setTimeout(5);
+        late.setReceiveNanos(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10));
+        channel.writeInbound(late);
+        assertNull(channel.readOutbound());
+        assertEquals(expired + 1, NettyRpcServerHandler.expiredRequests());
+
+        RpcMessage timely = request(DeadlineService.class, "deadline", 2, "remaining");
+        timely.setTimeout(1000);
+        timely.setReceiveNanos(System.nanoTime());
+        channel.writeInbound(timely);
+        RpcMessage response = channel.readOutbound();
+        long remaining = (Long) ((RpcResponse<?>) response.getData()).getData();
+        assertTrue(remaining > 0 && remaining <= 1000);
+
+        //没有期限的请求 处理时线程上也没有截止时间
+        channel.writeInbound(request(DeadlineService.class, "deadline", 3, "remaining"));
+        response = channel.readOutbound();
+        assertEquals(RpcDeadline.NO_DEADLINE, (long) (Long) ((RpcResponse<?>) response.getData()).getData());
+    }
+
+    private RpcMessage request(int requestId, String methodName) {
+        return request(AsyncService.class, "async", requestId, methodName);
+    }
+
+    private RpcMessage request(Class<?> service, String group, int requestId, String methodName) {
+        RpcRequest rpcRequest = RpcRequest.builder()
+                .interfaceName(service.getName())
+                .methodName(methodName)
+                .parameters(new Object[]{"jojo"})
+                .paramTypes(new Class<?>[]{String.class})
+                .group(group)
+                .version("1").build();
+        return RpcMessage.builder()
+                .requestId(requestId)
+                .messageType(RpcConstants.REQUEST_TYPE)
+                .data(rpcRequest).build();
+    }
+}
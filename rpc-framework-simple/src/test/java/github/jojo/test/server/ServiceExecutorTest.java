@@ -0,0 +1,281 @@
+package github.jojo.test.server;
+
+import github.jojo.annotation.RpcMethod;
+import github.jojo.annotation.RpcService;
+import github.jojo.entity.RpcServiceProperties;
+import github.jojo.enums.RejectPolicyEnum;
+import github.jojo.enums.RpcResponseCodeEnum;
+import github.jojo.factory.SingletonFactory;
+import github.jojo.provider.ServiceProviderImpl;
+import github.jojo.remoting.constants.RpcConstants;
+import github.jojo.remoting.dto.RpcMessage;
+import github.jojo.remoting.dto.RpcRequest;
+import github.jojo.remoting.dto.RpcResponse;
+import github.jojo.remoting.transport.netty.server.AdmissionController;
+import github.jojo.remoting.transport.netty.server.NettyRpcServerHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/7 17:00
+ * @description -----------服务/方法的独立线程池：慢方法占满自己的线程池后 其他方法不受影响 满了之后快速失败或者交给公共线程池----------
+ */
+public class ServiceExecutorTest {
+
+    public interface BulkheadService {
+        String slow(String name);
+
+        String critical(String name);
+    }
+
+    private static final CountDownLatch RELEASE = new CountDownLatch(1);
+
+    @RpcService(threads = 1, queueSize = 1)
+    public static class BulkheadServiceImpl implements BulkheadService {
+        @Override
+        public String slow(String name) {
+            try {
+                RELEASE.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Thread.currentThread().getName();
+        }
+
+        @Override
+        @RpcMethod(threads = 1)
+        public String critical(String name) {
+            return Thread.currentThread().getName();
+        }
+    }
+
+    public interface FallbackService {
+        String slow(String name);
+    }
+
+    private static final CountDownLatch FALLBACK_RELEASE = new CountDownLatch(1);
+
+    @RpcService(threads = 1, queueSize = 1, rejectPolicy = RejectPolicyEnum.FALLBACK_TO_SHARED)
+    public static class FallbackServiceImpl implements FallbackService {
+        @Override
+        public String slow(String name) {
+            try {
+                FALLBACK_RELEASE.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Thread.currentThread().getName();
+        }
+    }
+
+    public interface RejectedFallbackService {
+        String slow(String name);
+    }
+
+    private static final CountDownLatch REJECTED_FALLBACK_RELEASE = new CountDownLatch(1);
+
+    @RpcService(threads = 1, queueSize = 1, rejectPolicy = RejectPolicyEnum.FALLBACK_TO_SHARED)
+    public static class RejectedFallbackServiceImpl implements RejectedFallbackService {
+        @Override
+        public String slow(String name) {
+            try {
+                REJECTED_FALLBACK_RELEASE.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Thread.currentThread().getName();
+        }
+    }
+
+    public interface OverloadService {
+        String hello(String name);
+
+        String hello(String name, int times);
+
+        String hello(Left.Req req);
+
+        String hello(Right.Req req);
+    }
+
+    /**
+     * 两个简单类名相同的参数类型
+     */
+    public static class Left {
+        public static class Req {
+        }
+    }
+
+    public static class Right {
+        public static class Req {
+        }
+    }
+
+    public static class OverloadServiceImpl implements OverloadService {
+        @Override
+        @RpcMethod(threads = 1)
+        public String hello(String name) {
+            return name;
+        }
+
+        @Override
+        @RpcMethod(threads = 2, queueSize = 8)
+        public String hello(String name, int times) {
+            return name + times;
+        }
+
+        @Override
+        @RpcMethod(threads = 3)
+        public String hello(Left.Req req) {
+            return "left";
+        }
+
+        @Override
+        @RpcMethod(threads = 4)
+        public String hello(Right.Req req) {
+            return "right";
+        }
+    }
+
+    @Test
+    public void testFailFast() throws Exception {
+        SingletonFactory.getInstance(ServiceProviderImpl.class).addService(new BulkheadServiceImpl(), BulkheadService.class,
+                RpcServiceProperties.builder().serviceName(BulkheadService.class.getName()).group("bulkhead").version("1").build());
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyRpcServerHandler());
+        //第一个请求占用唯一的线程 第二个请求进入队列 第三个请求被拒绝
+        channel.writeInbound(request(BulkheadService.class, "bulkhead", 1, "slow"));
+        channel.writeInbound(request(BulkheadService.class, "bulkhead", 2, "slow"));
+        channel.writeInbound(request(BulkheadService.class, "bulkhead", 3, "slow"));
+        Map<Integer, RpcResponse<?>> responses = new HashMap<>();
+        collect(channel, responses, 1);
+        assertEquals(RpcResponseCodeEnum.OVERLOADED.getCode(), (int) responses.get(3).getCode());
+
+        //同一个服务中有独立线程池的方法不受慢方法影响
+        channel.writeInbound(request(BulkheadService.class, "bulkhead", 4, "critical"));
+        collect(channel, responses, 2);
+        assertTrue(((String) responses.get(4).getData()).startsWith("rpc-method-"));
+
+        RELEASE.countDown();
+        collect(channel, responses, 4);
+        assertTrue(((String) responses.get(1).getData()).startsWith("rpc-service-"));
+        assertTrue(((String) responses.get(2).getData()).startsWith("rpc-service-"));
+    }
+
+    @Test
+    public void testFallbackToShared() throws Exception {
+        SingletonFactory.getInstance(ServiceProviderImpl.class).addService(new FallbackServiceImpl(), FallbackService.class,
+                RpcServiceProperties.builder().serviceName(FallbackService.class.getName()).group("fallback").version("1").build());
+        DefaultEventExecutorGroup shared = new DefaultEventExecutorGroup(1);
+        try {
+            EmbeddedChannel channel = new EmbeddedChannel(new NettyRpcServerHandler(shared));
+            for (int i = 1; i <= 3; i++) {
+                channel.writeInbound(request(FallbackService.class, "fallback", i, "slow"));
+            }
+            FALLBACK_RELEASE.countDown();
+            Map<Integer, RpcResponse<?>> responses = new HashMap<>();
+            collect(channel, responses, 3);
+            //独立线程池满了之后 第三个请求在公共线程池中执行
+            assertTrue(((String) responses.get(3).getData()).startsWith("defaultEventExecutorGroup"));
+            assertTrue(((String) responses.get(1).getData()).startsWith("rpc-service-"));
+        } finally {
+            shared.shutdownGracefully();
+        }
+    }
+
+    @Test
+    public void testFallbackRejectedByShared() throws Exception {
+        SingletonFactory.getInstance(ServiceProviderImpl.class).addService(new RejectedFallbackServiceImpl(), RejectedFallbackService.class,
+                RpcServiceProperties.builder().serviceName(RejectedFallbackService.class.getName()).group("rejected").version("1").build());
+        AdmissionController admissionController = SingletonFactory.getInstance(AdmissionController.class);
+        //公共线程池已经关闭 回退时同样被拒绝
+        ExecutorService shared = Executors.newSingleThreadExecutor();
+        shared.shutdown();
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyRpcServerHandler(shared));
+        channel.writeInbound(request(RejectedFallbackService.class, "rejected", 1, "slow"));
+        channel.writeInbound(request(RejectedFallbackService.class, "rejected", 2, "slow"));
+        int pending = admissionController.pending();
+        String rpcServiceName = RejectedFallbackService.class.getName() + "rejected" + "1";
+        assertTrue(admissionController.tryAcquire(rpcServiceName));
+        RpcMessage third = request(RejectedFallbackService.class, "rejected", 3, "slow");
+        third.setAdmittedService(rpcServiceName);
+        channel.writeInbound(third);
+        Map<Integer, RpcResponse<?>> responses = new HashMap<>();
+        collect(channel, responses, 1);
+        //第三个请求得到过载响应 准入名额被释放 连接不受影响
+        assertEquals(RpcResponseCodeEnum.OVERLOADED.getCode(), (int) responses.get(3).getCode());
+        assertEquals(pending, admissionController.pending());
+        assertTrue(channel.isOpen());
+
+        REJECTED_FALLBACK_RELEASE.countDown();
+        collect(channel, responses, 3);
+    }
+
+    @Test
+    public void testOverloadExecutors() {
+        RpcServiceProperties properties = RpcServiceProperties.builder()
+                .serviceName(OverloadService.class.getName()).group("overload").version("1").build();
+        ServiceProviderImpl serviceProvider = SingletonFactory.getInstance(ServiceProviderImpl.class);
+        serviceProvider.addService(new OverloadServiceImpl(), OverloadService.class, properties);
+        //同名重载方法各自拥有按自己的注解创建的线程池
+        ExecutorService one = serviceProvider.getInvoker(properties, "hello", new Class<?>[]{String.class}).getExecutor();
+        ExecutorService two = serviceProvider.getInvoker(properties, "hello", new Class<?>[]{String.class, int.class}).getExecutor();
+        assertNotSame(one, two);
+        assertEquals(1, ((ThreadPoolExecutor) one).getCorePoolSize());
+        assertEquals(2, ((ThreadPoolExecutor) two).getCorePoolSize());
+        //参数类型的简单类名相同时也不共用线程池
+        ExecutorService left = serviceProvider.getInvoker(properties, "hello", new Class<?>[]{Left.Req.class}).getExecutor();
+        ExecutorService right = serviceProvider.getInvoker(properties, "hello", new Class<?>[]{Right.Req.class}).getExecutor();
+        assertNotSame(left, right);
+        assertEquals(3, ((ThreadPoolExecutor) left).getCorePoolSize());
+        assertEquals(4, ((ThreadPoolExecutor) right).getCorePoolSize());
+    }
+
+    /**
+     * 其他线程中写出的响应由EmbeddedChannel的EventLoop执行 需要在测试线程中运行
+     */
+    private static void collect(EmbeddedChannel channel, Map<Integer, RpcResponse<?>> responses, int expected)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (responses.size() < expected && System.nanoTime() < deadline) {
+            channel.runPendingTasks();
+            RpcMessage response;
+            while ((response = channel.readOutbound()) != null) {
+                responses.put(response.getRequestId(), (RpcResponse<?>) response.getData());
+            }
+            Thread.sleep(5);
+        }
+        assertEquals(expected, responses.size());
+        for (RpcResponse<?> rpcResponse : responses.values()) {
+            assertNotNull(rpcResponse.getCode());
+        }
+    }
+
+    private static RpcMessage request(Class<?> service, String group, int requestId, String methodName) {
+        RpcRequest rpcRequest = RpcRequest.builder()
+                .interfaceName(service.getName())
+                .methodName(methodName)
+                .parameters(new Object[]{"jojo"})
+                .paramTypes(new Class<?>[]{String.class})
+                .group(group)
+                .version("1").build();
+        return RpcMessage.builder()
+                .requestId(requestId)
+                .messageType(RpcConstants.REQUEST_TYPE)
+                .data(rpcRequest).build();
+    }
+}
@@ -0,0 +1,44 @@
+package github.jojo.test.server;
+
+import github.jojo.utils.concurrent.threadpool.ThreadPoolFactoryUtils;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/8 20:10
+ * @description -----------virtual执行模式：JDK 21+上任务在虚拟线程中执行 低版本JDK返回null由服务端回退到平台线程池----------
+ */
+public class VirtualExecutionModeTest {
+
+    @Test
+    public void testVirtualThreadPerTaskExecutor() throws Exception {
+        ExecutorService executor = ThreadPoolFactoryUtils.createVirtualThreadPerTaskExecutorIfAbsent("test-virtual");
+        if (javaVersion() < 21) {
+            assertNull(executor);
+            //不支持的结果被缓存 再次调用同样返回null
+            assertNull(ThreadPoolFactoryUtils.createVirtualThreadPerTaskExecutorIfAbsent("test-virtual-again"));
+            return;
+        }
+        assertSame(executor, ThreadPoolFactoryUtils.createVirtualThreadPerTaskExecutorIfAbsent("test-virtual"));
+        Future<String> future = executor.submit(() -> {
+            boolean virtual = (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+            return virtual + ":" + Thread.currentThread().getName();
+        });
+        String result = future.get(5, TimeUnit.SECONDS);
+        assertTrue(result, result.startsWith("true:test-virtual-"));
+    }
+
+    private static int javaVersion() {
+        String version = System.getProperty("java.specification.version");
+        return version.startsWith("1.") ? Integer.parseInt(version.substring(2)) : Integer.parseInt(version);
+    }
+}
@@ -0,0 +1,101 @@
+package github.jojo.test.transport;
+
+import github.jojo.remoting.transport.netty.NettyTransport;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/11 21:20
+ * @description -----------传输层选择：Linux上使用epoll 指定nio或者native库不可用时使用NIO----------
+ */
+public class NettyTransportTest {
+
+    @Test
+    public void testSelect() {
+        NettyTransport nio = new NettyTransport(NettyTransport.NIO);
+        assertFalse(nio.isEpoll());
+        assertEquals(NioServerSocketChannel.class, nio.serverChannelClass());
+        assertEquals(NioSocketChannel.class, nio.socketChannelClass());
+        EventLoopGroup group = nio.newEventLoopGroup(1);
+        try {
+            assertTrue(group instanceof NioEventLoopGroup);
+        } finally {
+            group.shutdownGracefully();
+        }
+        assertEquals(Epoll.isAvailable(), new NettyTransport(NettyTransport.AUTO).isEpoll());
+        assertEquals(Epoll.isAvailable(), new NettyTransport(NettyTransport.EPOLL).isEpoll());
+    }
+
+    @Test
+    public void testEpollOptions() throws Exception {
+        Assume.assumeTrue(Epoll.isAvailable());
+        NettyTransport transport = new NettyTransport(NettyTransport.EPOLL);
+        EventLoopGroup group = transport.newEventLoopGroup(1);
+        try {
+            ServerBootstrap serverBootstrap = new ServerBootstrap().group(group)
+                    .channel(transport.serverChannelClass())
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            //原样写回
+                            ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                                @Override
+                                public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                    ctx.writeAndFlush(msg);
+                                }
+                            });
+                        }
+                    });
+            transport.configure(serverBootstrap);
+            Channel server = serverBootstrap.bind("127.0.0.1", 0).sync().channel();
+
+            CompletableFuture<String> echo = new CompletableFuture<>();
+            Bootstrap bootstrap = new Bootstrap().group(group)
+                    .channel(transport.socketChannelClass())
+                    .handler(new SimpleChannelInboundHandler<ByteBuf>() {
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
+                            echo.complete(msg.toString(StandardCharsets.UTF_8));
+                        }
+                    });
+            transport.configure(bootstrap);
+            Channel client = bootstrap.connect(server.localAddress()).sync().channel();
+            assertTrue(client instanceof EpollSocketChannel);
+            EpollSocketChannel epollChannel = (EpollSocketChannel) client;
+            assertEquals(EpollMode.EDGE_TRIGGERED, epollChannel.config().getEpollMode());
+            client.writeAndFlush(Unpooled.copiedBuffer("jojo", StandardCharsets.UTF_8));
+            assertEquals("jojo", echo.get(5, TimeUnit.SECONDS));
+            client.close().sync();
+            server.close().sync();
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+}
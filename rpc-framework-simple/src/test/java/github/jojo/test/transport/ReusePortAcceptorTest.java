@@ -0,0 +1,106 @@
+package github.jojo.test.transport;
+
+import github.jojo.remoting.transport.netty.NettyTransport;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.socket.SocketChannel;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author zzj
+ * @version 1.0
+ * @date 2021/3/12 20:40
+ * @description -----------SO_REUSEPORT多监听socket：大量客户端同时重连 新连接被内核分散到各个监听socket----------
+ * 只在epoll可用时运行
+ */
+public class ReusePortAcceptorTest {
+
+    private static final int ACCEPTORS = 4;
+    private static final int CONNECTIONS = 2000;
+
+    @Test
+    public void testThunderingHerdReconnect() throws Exception {
+        Assume.assumeTrue(Epoll.isAvailable());
+        NettyTransport transport = new NettyTransport(NettyTransport.EPOLL);
+        EventLoopGroup bossGroup = transport.newEventLoopGroup(ACCEPTORS);
+        EventLoopGroup workerGroup = transport.newEventLoopGroup(4);
+        EventLoopGroup clientGroup = transport.newEventLoopGroup(4);
+        //监听socket -> 它accept的连接数
+        Map<Channel, AtomicInteger> accepted = new ConcurrentHashMap<>();
+        CountDownLatch allAccepted = new CountDownLatch(CONNECTIONS);
+        List<Channel> clients = new ArrayList<>(CONNECTIONS);
+        try {
+            ServerBootstrap serverBootstrap = new ServerBootstrap().group(bossGroup, workerGroup)
+                    .channel(transport.serverChannelClass())
+                    .option(ChannelOption.SO_BACKLOG, 1024)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            accepted.computeIfAbsent(ch.parent(), k -> new AtomicInteger()).incrementAndGet();
+                            allAccepted.countDown();
+                        }
+                    });
+            transport.configure(serverBootstrap);
+            List<Channel> servers = transport.bind(serverBootstrap, "127.0.0.1", 0, ACCEPTORS);
+            assertEquals(ACCEPTORS, servers.size());
+            InetSocketAddress address = (InetSocketAddress) servers.get(0).localAddress();
+            for (Channel server : servers) {
+                assertEquals(address.getPort(), ((InetSocketAddress) server.localAddress()).getPort());
+            }
+
+            Bootstrap bootstrap = new Bootstrap().group(clientGroup)
+                    .channel(transport.socketChannelClass())
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10_000)
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                        }
+                    });
+            //所有客户端同时发起连接
+            List<ChannelFuture> connects = new ArrayList<>(CONNECTIONS);
+            for (int i = 0; i < CONNECTIONS; i++) {
+                connects.add(bootstrap.connect(address));
+            }
+            for (ChannelFuture connect : connects) {
+                assertTrue(String.valueOf(connect.cause()), connect.await(10, TimeUnit.SECONDS) && connect.isSuccess());
+                clients.add(connect.channel());
+            }
+            assertTrue(allAccepted.await(10, TimeUnit.SECONDS));
+
+            int total = 0;
+            for (AtomicInteger count : accepted.values()) {
+                total += count.get();
+            }
+            assertEquals(CONNECTIONS, total);
+            //内核按四元组哈希分配连接 不会全部落在同一个监听socket上
+            assertTrue(String.valueOf(accepted.values()), accepted.size() > 1);
+            for (Channel server : servers) {
+                server.close().sync();
+            }
+        } finally {
+            clients.forEach(Channel::close);
+            clientGroup.shutdownGracefully();
+            workerGroup.shutdownGracefully();
+            bossGroup.shutdownGracefully();
+        }
+    }
+}